@@ -0,0 +1,417 @@
+package wifi;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import rf.RF;
+
+/**
+ * Measures how one station receives and ACKs while several others send to it
+ * at the same time. For 1, 2, 4, ... senders on a simulated medium, every
+ * sender offers a frame to the receiving station at a fixed rate, starting at
+ * a random time, and each run prints a row with the frames offered and
+ * received per second, the receiver's goodput, how many ACKs its
+ * {@link AckResponder} sent and how many it had to skip because the medium was
+ * busy when SIFS was over, and what became of the senders' frames. The ACKs
+ * always go out exactly SIFS after their frame on the virtual clock, since
+ * receiving a frame never holds up the next one. Everything runs on the
+ * simulation's virtual clock with a fixed seed, so the table is the same on
+ * every machine and can be diffed between versions.
+ * <p>
+ * The simulation sends ACKs as scheduler events, so it never runs the
+ * responder thread or the receive threads. A second table runs those for real:
+ * a {@link Receiver} with its pull and validation threads gets frames from a
+ * stub RF layer, which the senders, each on a thread of its own, hand a frame
+ * every few ms in wall time. Each sender count is run once with ACKs sent the
+ * way the receiver used to, waiting out SIFS on the thread that handles the
+ * frame, and once with an {@link AckResponder} thread. The rows give the
+ * frames offered and handed to the application per second, and how long
+ * after its frame arrived each ACK went out.
+ *
+ * <pre>
+ * java wifi.AckBenchmark [options]
+ *   -senders N   most senders to try (default 8)
+ *   -interval I  seconds between the frames of one sender (default 20)
+ *   -time T      simulated seconds per run (default 3600)
+ *   -size S      payload size in bytes (default 20)
+ *   -seed N      seed for the simulation (default 1)
+ *   -gap G       ms between the frames of one sender on threads (default 200)
+ *   -wall W      seconds per run on threads (default 5)
+ * </pre>
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class AckBenchmark {
+
+	private byte[] payload;
+	private long intervalNanos;
+	private long seconds;
+	private long seed;
+
+	/**
+	 * Creates a benchmark
+	 *
+	 * @param size     int payload size
+	 * @param interval int seconds between the frames of one sender
+	 * @param seconds  long simulated seconds per run
+	 * @param seed     long
+	 */
+	public AckBenchmark(int size, int interval, long seconds, long seed) {
+		this.payload = new byte[size];
+		this.intervalNanos = interval * 1000000000L;
+		this.seconds = seconds;
+		this.seed = seed;
+	}
+
+	/**
+	 * Runs one simulation and prints its row
+	 *
+	 * @param senders int
+	 */
+	public void run(int senders) {
+		final SimScheduler scheduler = new SimScheduler(seed);
+		SimMedium medium = new SimMedium(scheduler);
+		// the link layer's output is not interesting here
+		PrintWriter quiet = new PrintWriter(new OutputStream() {
+			public void write(int b) {
+			}
+		});
+		LinkLayer receiver = new LinkLayer((short) 1, quiet, medium);
+		receiver.command(3, -1);
+		final long[] received = new long[2]; // frames and payload bytes
+		receiver.setReceiveListener(new ReceiveListener() {
+			public void framesReceived(List<Transmission> batch) {
+				for (Transmission t : batch) {
+					received[0]++;
+					received[1] += t.getBuf().length;
+				}
+			}
+		}, scheduler);
+		final long[] done = new long[4]; // frames offered, refused, delivered and failed
+		final Consumer<SendReceipt> count = new Consumer<SendReceipt>() {
+			public void accept(SendReceipt receipt) {
+				done[receipt.isDelivered() ? 2 : 3]++;
+			}
+		};
+		LinkLayer[] links = new LinkLayer[senders];
+		Random stagger = scheduler.random(0);
+		for (int i = 0; i < senders; i++) {
+			final LinkLayer link = new LinkLayer((short) (i + 2), quiet, medium);
+			link.command(3, -1);
+			links[i] = link;
+			scheduler.schedule(stagger.nextInt(1000) * (intervalNanos / 1000), new Runnable() {
+				public void run() {
+					done[0]++;
+					CompletableFuture<SendReceipt> receipt = link.sendAsync((short) 1, payload, payload.length);
+					if (receipt.isDone()) {
+						done[1]++;
+					}
+					else {
+						receipt.thenAccept(count);
+					}
+					scheduler.schedule(scheduler.nanoTime() + intervalNanos, this);
+				}
+			});
+		}
+		scheduler.run(seconds * 1000000000L);
+		long offered = done[0];
+		long refused = done[1];
+		long delivered = done[2];
+		long failed = done[3];
+		AckResponder acks = receiver.getAckResponder();
+		long sent = acks.getSent();
+		long busy = acks.getBusy();
+		for (LinkLayer link : links) {
+			link.close();
+		}
+		receiver.close();
+
+		System.out.printf("%7d %10.3f %10.3f %11.2f %9d %9d %9d %9d %7d %8d%n", senders, (double) offered / seconds,
+				(double) received[0] / seconds, (double) received[1] / seconds, sent, busy, refused, delivered, failed,
+				medium.getCollided());
+	}
+
+	/**
+	 * Stands in for the RF layer on threads. Frames the senders hand it wait in a
+	 * queue for the receiver to pull, and the ACKs transmitted are timed from the
+	 * arrival of the frame they answer
+	 */
+	private static class StubRF extends RFMedium {
+		private LinkedBlockingQueue<byte[]> air;
+		private ConcurrentHashMap<Integer, Long> arrived; // nanoTime by source and sequence number
+		private LatencyHistogram ackDelay; // ms from a frame's arrival to its ACK
+		private AtomicLong acks;
+
+		StubRF() {
+			super(null);
+			this.air = new LinkedBlockingQueue<byte[]>();
+			this.arrived = new ConcurrentHashMap<Integer, Long>();
+			this.ackDelay = new LatencyHistogram();
+			this.acks = new AtomicLong();
+		}
+
+		/**
+		 * Puts a frame on the air for the receiver
+		 */
+		void arrive(byte[] frame) {
+			arrived.put(key(frame), System.nanoTime());
+			air.add(frame);
+		}
+
+		@Override
+		public byte[] receive() {
+			try {
+				return air.take();
+			}
+			catch (InterruptedException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public long transmit(byte[] frame) {
+			long now = System.nanoTime();
+			// an ACK goes back to the frame's source, so its destination is the key
+			Long at = arrived.remove((((frame[2] & 0xFF) << 8 | (frame[3] & 0xFF)) << 16)
+					| ((frame[0] & 0x0F) << 8 | (frame[1] & 0xFF)));
+			if (at != null) {
+				ackDelay.record((now - at) / 1000000);
+			}
+			acks.incrementAndGet();
+			return now;
+		}
+
+		@Override
+		public boolean inUse() {
+			return false;
+		}
+
+		@Override
+		public long clock() {
+			return System.currentTimeMillis();
+		}
+
+		/**
+		 * the source and sequence number of a data frame
+		 */
+		private static int key(byte[] frame) {
+			return (((frame[4] & 0xFF) << 8 | (frame[5] & 0xFF)) << 16) | ((frame[0] & 0x0F) << 8 | (frame[1] & 0xFF));
+		}
+	}
+
+	/**
+	 * ACKs the way the receiver did before there was an AckResponder: the thread
+	 * handling the frame waits out SIFS, then transmits the ACK itself
+	 */
+	private static class InlineAcks extends AckResponder {
+		private Medium medium;
+
+		InlineAcks(Medium medium, AtomicIntegerArray cmds, PrintWriter output) {
+			super(medium, null, cmds, output);
+			this.medium = medium;
+		}
+
+		@Override
+		public void schedule(short from, short dest, int seqNum, long receivedNanos, int free) {
+			try {
+				Thread.sleep(RF.aSIFSTime);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (!medium.inUse()) {
+				Packet ack = new Packet((short) 1, (short) 0, seqNum, from, dest, new byte[0], 0);
+				medium.transmit(ack.getFrame());
+			}
+		}
+	}
+
+	/**
+	 * Runs the receiver on threads for a while and prints its row
+	 *
+	 * @param senders int
+	 * @param gapMillis long ms between the frames of one sender
+	 * @param wallSeconds int how long to run
+	 * @param inline boolean wait out SIFS on the receiving thread instead of using an AckResponder
+	 */
+	public void runThreaded(int senders, final long gapMillis, int wallSeconds, boolean inline)
+			throws InterruptedException {
+		final StubRF rf = new StubRF();
+		PrintWriter quiet = new PrintWriter(new OutputStream() {
+			public void write(int b) {
+			}
+		});
+		AtomicIntegerArray cmds = new AtomicIntegerArray(17);
+		cmds.set(9, 1 << 30); // the application keeps up, never refuse a frame for buffer space
+		StationTable stations = new StationTable();
+		final Station station = new Station((short) 1);
+		stations.add(station);
+		AckResponder responder = inline ? new InlineAcks(rf, cmds, quiet) : new AckResponder(rf, null, cmds, quiet);
+		Receiver receiver = new Receiver(rf, rf, MacClock.system, stations, new ArrayBlockingQueue<Packet>(10), cmds,
+				quiet, null, (short) 1, new ClockSync(rf, new AtomicLong()), new GroupMembership(), new FlowControl(),
+				new AtomicInteger(), responder);
+
+		final AtomicLong received = new AtomicLong();
+		Thread application = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						station.take();
+						received.incrementAndGet();
+					}
+				}
+				catch (InterruptedException e) {
+					// done
+				}
+			}
+		}, "application");
+		final AtomicLong offered = new AtomicLong();
+		final long stopAt = System.nanoTime() + wallSeconds * 1000000000L;
+		final Random stagger = new Random(seed);
+		Thread[] threads = new Thread[senders];
+		for (int i = 0; i < senders; i++) {
+			final short source = (short) (i + 2);
+			final long first = stagger.nextInt((int) gapMillis + 1);
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					long next = System.nanoTime() + first * 1000000L;
+					int seq = 0;
+					while (next < stopAt) {
+						long left = next - System.nanoTime();
+						if (left > 0) {
+							LockSupport.parkNanos(left);
+							continue;
+						}
+						rf.arrive(new Packet((short) 0, (short) 0, seq++, source, (short) 1, payload, payload.length)
+								.getFrame());
+						offered.incrementAndGet();
+						next += gapMillis * 1000000L;
+					}
+				}
+			}, "sender-" + source);
+		}
+		Thread pull = new Thread(receiver, "pull");
+		Thread validation = new Thread(receiver.getValidationStage(), "validation");
+		Thread acks = new Thread(responder, "acks");
+		application.start();
+		pull.start();
+		validation.start();
+		if (!inline) {
+			acks.start();
+		}
+		long began = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		double elapsed = (System.nanoTime() - began) / 1e9;
+		long handed = received.get();
+		long sent = rf.acks.get();
+
+		receiver.stop();
+		responder.stop();
+		for (Thread thread : new Thread[] { pull, validation, acks, application }) {
+			thread.interrupt();
+			thread.join(1000);
+		}
+
+		System.out.printf("%-9s %7d %10.1f %10.1f %9d %9d %9d%n", inline ? "inline" : "responder", senders,
+				offered.get() / elapsed, handed / elapsed, sent, rf.ackDelay.percentile(50),
+				rf.ackDelay.percentile(99));
+	}
+
+	/**
+	 * Runs the benchmark, see the class documentation for options
+	 *
+	 * @param args String[]
+	 */
+	public static void main(String[] args) {
+		int maxSenders = 8;
+		int interval = 20;
+		long seconds = 3600;
+		int size = 20;
+		long seed = 1;
+		long gap = 200;
+		int wall = 5;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-senders")) {
+					maxSenders = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if (arg.equals("-interval")) {
+					interval = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if (arg.equals("-time")) {
+					seconds = Math.max(1, Long.parseLong(args[++i]));
+				}
+				else if (arg.equals("-size")) {
+					size = Integer.parseInt(args[++i]);
+				}
+				else if (arg.equals("-seed")) {
+					seed = Long.parseLong(args[++i]);
+				}
+				else if (arg.equals("-gap")) {
+					gap = Math.max(1, Long.parseLong(args[++i]));
+				}
+				else if (arg.equals("-wall")) {
+					wall = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			System.err.println("Bad arguments: " + e.getMessage());
+			System.err.println("See the AckBenchmark class documentation for usage.");
+			System.exit(1);
+		}
+
+		System.out.println("AckBenchmark: " + size + " byte payloads, a frame every " + interval + " s per sender, "
+				+ seconds + " simulated s per run, seed " + seed);
+		System.out.printf("%7s %10s %10s %11s %9s %9s %9s %9s %7s %8s%n", "senders", "offered/s", "recv/s",
+				"goodput B/s", "acks", "acks busy", "refused", "delivered", "failed", "collided");
+		AckBenchmark benchmark = new AckBenchmark(size, interval, seconds, seed);
+		for (int senders = 1;; senders = Math.min(senders * 2, maxSenders)) {
+			benchmark.run(senders);
+			if (senders == maxSenders) {
+				break;
+			}
+		}
+
+		System.out.println();
+		System.out.println("On threads: a frame every " + gap + " ms per sender, " + wall
+				+ " s per run, ACK delay in ms from the frame's arrival");
+		System.out.printf("%-9s %7s %10s %10s %9s %9s %9s%n", "acks", "senders", "offered/s", "recv/s", "acks sent",
+				"ACK p50", "ACK p99");
+		try {
+			for (int senders = 1;; senders = Math.min(senders * 2, maxSenders)) {
+				benchmark.runThreaded(senders, gap, wall, true);
+				benchmark.runThreaded(senders, gap, wall, false);
+				if (senders == maxSenders) {
+					break;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,195 @@
+package wifi;
+
+import java.io.PrintWriter;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+import rf.RF;
+
+/**
+ * A thread class that sends ACKs on behalf of the receiver. The receiver only
+ * schedules an ACK and goes straight back to pulling frames off the RF layer,
+ * while this thread waits out SIFS measured from the moment the frame arrived
+ * and transmits the ACK. In a simulation there is no thread, each ACK is an
+ * event on the scheduler instead.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class AckResponder implements Runnable {
+
+	/**
+	 * An ACK waiting for its SIFS to pass
+	 */
+	private static class PendingAck {
+		short from;
+		short dest;
+		int seqNum;
+		int free;
+		long dueNanos;
+	}
+
+	private static final long spinNanos = 1000000; // spin for the last millisecond for precise timing
+
+	private Medium medium;
+	private SimScheduler scheduler; // null unless simulated
+	private AtomicIntegerArray cmds;
+	private PrintWriter output;
+	private LinkedBlockingQueue<PendingAck> pending;
+	private volatile long sent;
+	private volatile long busy;
+	private volatile long lateNanos;
+	private volatile boolean running;
+
+	/**
+	 * Creates an ACK responder
+	 * 
+	 * @param medium    Medium
+	 * @param scheduler SimScheduler to send ACKs on, or null to send them on a thread
+	 * @param cmds      AtomicIntegerArray
+	 * @param output    PrintWriter
+	 */
+	public AckResponder(Medium medium, SimScheduler scheduler, AtomicIntegerArray cmds, PrintWriter output) {
+		this.medium = medium;
+		this.scheduler = scheduler;
+		this.cmds = cmds;
+		this.output = output;
+		this.pending = new LinkedBlockingQueue<PendingAck>();
+		this.running = true;
+	}
+
+	/**
+	 * Schedules an ACK to go out SIFS after the frame it answers arrived
+	 * 
+	 * @param from          short the station the frame was addressed to
+	 * @param dest          short source of the frame
+	 * @param seqNum        int sequence number of the frame
+	 * @param receivedNanos long clock nanoTime() when the frame arrived
+	 * @param free          int bytes left in the station's incoming buffer
+	 */
+	public void schedule(short from, short dest, int seqNum, long receivedNanos, int free) {
+		PendingAck ack = new PendingAck();
+		ack.from = from;
+		ack.dest = dest;
+		ack.seqNum = seqNum;
+		ack.free = Math.max(0, Math.min(free, 0xFFFF));
+		ack.dueNanos = receivedNanos + RF.aSIFSTime * 1000000L;
+		if (scheduler != null) {
+			final PendingAck due = ack;
+			scheduler.schedule(ack.dueNanos, new Runnable() {
+				public void run() {
+					if (running) {
+						respond(due, scheduler.nanoTime());
+					}
+				}
+			});
+			return;
+		}
+		pending.add(ack);
+	}
+
+	/**
+	 * Starts the ACK responder
+	 */
+	@Override
+	public void run() {
+		while (running) {
+			PendingAck ack;
+			try {
+				ack = pending.take();
+			}
+			catch (InterruptedException e) {
+				if (running) {
+					System.err.println("	Error while waiting for acks to send");
+				}
+				continue;
+			}
+			waitUntil(ack.dueNanos);
+			respond(ack, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Transmits an ACK that is due, unless the medium is busy
+	 * 
+	 * @param ack PendingAck
+	 * @param now long clock nanoTime()
+	 */
+	private void respond(PendingAck ack, long now) {
+		if (!medium.inUse()) {
+			long late = now - ack.dueNanos;
+			// the ACK advertises the free buffer space so the sender can back off
+			byte[] window = { (byte) (ack.free >> 8), (byte) ack.free };
+			Packet packet = new Packet((short) 1, (short) 0, ack.seqNum, ack.from, ack.dest, window, 2);
+			medium.transmit(packet.getFrame());
+			sent++;
+			lateNanos += late;
+			if (cmds.get(0) == -1) {
+				output.println("	AckResponder: Ack sent " + late / 1000 + " us after SIFS");
+			}
+		}
+		else {
+			busy++;
+			if (cmds.get(0) == -1) {
+				output.println("	AckResponder: Couldn't send Ack!!");
+			}
+		}
+	}
+
+	/**
+	 * Tells the responder to stop, interrupt its thread to wake it
+	 */
+	public void stop() {
+		running = false;
+		pending.clear();
+	}
+
+	/**
+	 * gets the number of ACKs sent
+	 * 
+	 * @return sent long
+	 */
+	public long getSent() {
+		return sent;
+	}
+
+	/**
+	 * gets the number of ACKs not sent because the medium was busy when they were
+	 * due
+	 * 
+	 * @return busy long
+	 */
+	public long getBusy() {
+		return busy;
+	}
+
+	/**
+	 * Summarizes how well ACKs met their SIFS deadline
+	 * 
+	 * @return report String
+	 */
+	public String report() {
+		long count = sent;
+		return "Acks sent: " + count + ", skipped because the medium was busy: " + busy + ", average lateness: "
+				+ (count == 0 ? 0 : lateNanos / count / 1000) + " us\n";
+	}
+
+	/**
+	 * Parks until shortly before the deadline, then spins so the ACK goes out on
+	 * time
+	 * 
+	 * @param dueNanos long
+	 */
+	private void waitUntil(long dueNanos) {
+		long left;
+		while ((left = dueNanos - System.nanoTime()) > 0) {
+			if (left > spinNanos) {
+				LockSupport.parkNanos(left - spinNanos);
+			}
+			else {
+				Thread.yield();
+			}
+		}
+	}
+}
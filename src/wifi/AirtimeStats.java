@@ -0,0 +1,90 @@
+package wifi;
+
+/**
+ * Adds up where the sender's time goes for every frame it finishes with:
+ * waiting DIFS, rounding up to the slot grid, counting down backoff slots,
+ * transmitting and waiting for the ACK. Used to put a number on the MAC
+ * overhead per delivered byte.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class AirtimeStats {
+
+	private long frames;
+	private long delivered;
+	private long deliveredBytes;
+	private long difsNanos;
+	private long roundNanos;
+	private long backoffNanos;
+	private long txNanos;
+	private long ackNanos;
+
+	/**
+	 * Records the time spent on one frame
+	 * 
+	 * @param isDelivered  boolean true if the frame was ACKed or is a broadcast
+	 * @param bytes        int data bytes in the frame
+	 * @param difsNanos    long time spent waiting DIFS
+	 * @param roundNanos   long time spent rounding up to the slot grid
+	 * @param backoffNanos long time spent in backoff slots
+	 * @param txNanos      long time spent transmitting
+	 * @param ackNanos     long time spent waiting for ACKs
+	 */
+	public synchronized void frameDone(boolean isDelivered, int bytes, long difsNanos, long roundNanos,
+			long backoffNanos, long txNanos, long ackNanos) {
+		frames++;
+		if (isDelivered) {
+			delivered++;
+			deliveredBytes += bytes;
+		}
+		this.difsNanos += difsNanos;
+		this.roundNanos += roundNanos;
+		this.backoffNanos += backoffNanos;
+		this.txNanos += txNanos;
+		this.ackNanos += ackNanos;
+	}
+
+	/**
+	 * Forgets everything recorded so far
+	 */
+	public synchronized void reset() {
+		frames = 0;
+		delivered = 0;
+		deliveredBytes = 0;
+		difsNanos = 0;
+		roundNanos = 0;
+		backoffNanos = 0;
+		txNanos = 0;
+		ackNanos = 0;
+	}
+
+	/**
+	 * Summarizes the recorded time per frame and per delivered byte
+	 * 
+	 * @return report String
+	 */
+	public synchronized String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Frames: " + frames + ", delivered: " + delivered + " (" + deliveredBytes + " bytes)\n");
+		long total = difsNanos + roundNanos + backoffNanos + txNanos + ackNanos;
+		sb.append(line("DIFS", difsNanos, total));
+		sb.append(line("Slot rounding", roundNanos, total));
+		sb.append(line("Backoff", backoffNanos, total));
+		sb.append(line("Transmission", txNanos, total));
+		sb.append(line("ACK wait", ackNanos, total));
+		long overhead = total - txNanos;
+		if (deliveredBytes > 0) {
+			sb.append(String.format("MAC overhead: %.1f us per delivered byte%n", overhead / 1000.0 / deliveredBytes));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * formats one line of the report
+	 */
+	private String line(String name, long nanos, long total) {
+		return String.format("  %-14s %10.1f ms total, %7.1f ms per frame, %5.1f%%%n", name, nanos / 1e6,
+				frames == 0 ? 0.0 : nanos / 1e6 / frames, total == 0 ? 0.0 : 100.0 * nanos / total);
+	}
+}
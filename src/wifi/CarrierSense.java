@@ -0,0 +1,181 @@
+package wifi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Watches the medium so the sender can wait for it to go idle instead of
+ * polling. One thread samples {@link Medium#inUse()}: every millisecond while
+ * someone is waiting for the medium and right after it went idle, backing off
+ * to every 50 ms otherwise, busy or not. A new waiter wakes the thread to take
+ * a sample at once, and is woken by the first idle sample taken after it
+ * started waiting. The samples also give the share of time the medium was
+ * busy, to within the sampling interval.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class CarrierSense implements Runnable {
+
+	private static final long fastNanos = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long slowNanos = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final double recentNanos = TimeUnit.SECONDS.toNanos(1); // time constant of the recent average
+
+	private Medium medium;
+	private volatile boolean running;
+	private volatile Thread monitor;
+	private AtomicInteger waiters;
+	private volatile long samples; // samples taken so far
+	private volatile long lastIdleSample; // samples when the medium was last seen idle
+
+	// utilization, guarded by this
+	private long busyNanos;
+	private long totalNanos;
+	private double recent; // busy share, exponentially averaged
+	private long busyPeriods;
+	private long since; // nanoTime of the last reset
+	private long samplesAtReset;
+
+	/**
+	 * Creates a monitor, which must be started on its own thread
+	 *
+	 * @param medium Medium
+	 */
+	public CarrierSense(Medium medium) {
+		this.medium = medium;
+		this.running = true;
+		this.waiters = new AtomicInteger(0);
+		this.since = System.nanoTime();
+	}
+
+	/**
+	 * Samples the medium until stopped
+	 */
+	@Override
+	public void run() {
+		monitor = Thread.currentThread();
+		long interval = fastNanos;
+		boolean wasBusy = false;
+		long last = System.nanoTime();
+		while (running) {
+			boolean busy = medium.inUse();
+			long now = System.nanoTime();
+			account(wasBusy, busy, now - last);
+			last = now;
+			samples++;
+			if (!busy) {
+				lastIdleSample = samples;
+				if (waiters.get() > 0) {
+					synchronized (this) {
+						notifyAll();
+					}
+				}
+			}
+			// sample fast only while someone waits or the medium just went idle
+			if (waiters.get() > 0 || (wasBusy && !busy)) {
+				interval = fastNanos;
+			}
+			else {
+				interval = Math.min(slowNanos, interval * 2);
+			}
+			wasBusy = busy;
+			LockSupport.parkNanos(this, interval);
+		}
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Waits until the medium is idle
+	 *
+	 * @param timeoutMillis long longest time to wait
+	 * @return true if the medium went idle, false on timeout or when stopped
+	 */
+	public boolean awaitIdle(long timeoutMillis) {
+		if (!medium.inUse()) {
+			return true;
+		}
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		waiters.incrementAndGet();
+		try {
+			// only an idle sample taken after now counts
+			long after = samples;
+			Thread current = monitor;
+			if (current != null) {
+				LockSupport.unpark(current);
+			}
+			synchronized (this) {
+				while (lastIdleSample <= after && running) {
+					long left = deadline - System.currentTimeMillis();
+					if (left <= 0) {
+						return false;
+					}
+					try {
+						wait(left);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+			}
+			return running;
+		}
+		finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Adds the time since the last sample to the busy or idle time
+	 */
+	private synchronized void account(boolean wasBusy, boolean busy, long elapsed) {
+		totalNanos += elapsed;
+		if (wasBusy) {
+			busyNanos += elapsed;
+		}
+		if (busy && !wasBusy) {
+			busyPeriods++;
+		}
+		double weight = Math.min(1.0, elapsed / recentNanos);
+		recent += weight * ((wasBusy ? 1.0 : 0.0) - recent);
+	}
+
+	/**
+	 * Stops sampling and wakes anyone waiting
+	 */
+	public void stop() {
+		running = false;
+		Thread current = monitor;
+		if (current != null) {
+			LockSupport.unpark(current);
+		}
+	}
+
+	/**
+	 * Starts the utilization counts over. The recent average is left as it is,
+	 * it forgets old samples by itself
+	 */
+	public synchronized void reset() {
+		busyNanos = 0;
+		totalNanos = 0;
+		busyPeriods = 0;
+		since = System.nanoTime();
+		samplesAtReset = samples;
+	}
+
+	/**
+	 * Summarizes how busy the medium has been
+	 *
+	 * @return report String
+	 */
+	public synchronized String report() {
+		double seconds = (System.nanoTime() - since) / 1e9;
+		return String.format(
+				"Medium busy %.1f%% since reset (%.0f s), %.1f%% recently (not reset), %d busy periods, %.0f samples/s%n",
+				totalNanos > 0 ? 100.0 * busyNanos / totalNanos : 0.0, seconds, 100.0 * recent, busyPeriods,
+				seconds > 0 ? (samples - samplesAtReset) / seconds : 0.0);
+	}
+}
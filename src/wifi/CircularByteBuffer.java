@@ -20,6 +20,8 @@ package wifi;
 
 import java.io.*;
 import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Implements the Circular Buffer producer/consumer model for bytes.
@@ -249,6 +251,141 @@ public class CircularByteBuffer
 		}
 	}
 
+	/**
+	 * Read bytes directly into a ByteBuffer.
+	 * <p>
+	 * Bytes are copied straight out of the circular buffer, in at most
+	 * two pieces when the readable region wraps around the end of the
+	 * buffer, so no intermediate array is needed.  Unlike the
+	 * InputStream, this method never blocks: if no bytes are available
+	 * it returns zero.
+	 *
+	 * @param dst Buffer into which bytes are transferred.
+	 * @return The number of bytes read, or -1 if the buffer is empty and
+	 *   the OutputStream has been closed.
+	 * @throws IOException if the InputStream is closed.
+	 */
+	public int read(ByteBuffer dst) throws IOException {
+		synchronized (this){
+			if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot read from a closed InputStream.");
+			int available = available();
+			if (available == 0){
+				return outputStreamClosed ? -1 : 0;
+			}
+			int length = Math.min(dst.remaining(), available);
+			int firstLen = Math.min(length, buffer.length - readPosition);
+			int secondLen = length - firstLen;
+			dst.put(buffer, readPosition, firstLen);
+			if (secondLen > 0){
+				dst.put(buffer, 0, secondLen);
+				readPosition = secondLen;
+			} else {
+				readPosition += length;
+			}
+			if (readPosition == buffer.length) {
+				readPosition = 0;
+			}
+			ensureMark();
+			return length;
+		}
+	}
+
+	/**
+	 * Write the remaining bytes of a ByteBuffer into this buffer.
+	 * <p>
+	 * Bytes are copied straight into the circular buffer, splitting the
+	 * copy in two when the free region wraps around the end of the buffer.
+	 * Blocking, growth and overflow behave as they do for the OutputStream.
+	 *
+	 * @param src Buffer whose remaining bytes are written.
+	 * @return The number of bytes written.
+	 * @throws BufferOverflowException if buffer does not allow blocking writes
+	 *   and the buffer is full.  If the exception is thrown, no data
+	 *   will have been written since the buffer was set to be non-blocking.
+	 * @throws IOException if the stream is closed, or the write is interrupted.
+	 */
+	public int write(ByteBuffer src) throws IOException {
+		int total = src.remaining();
+		while (src.hasRemaining()){
+			synchronized (this){
+				if (outputStreamClosed) throw new IOException("OutputStream has been closed; cannot write to a closed OutputStream.");
+				if (inputStreamClosed) throw new IOException("Buffer closed by InputStream; cannot write to a closed buffer.");
+				int len = src.remaining();
+				int spaceLeft = spaceLeft();
+				while (infinite && spaceLeft < len){
+					resize();
+					spaceLeft = spaceLeft();
+				}
+				if (!blockingWrite && spaceLeft < len) throw new BufferOverflowException();
+				int realLen = Math.min(len, spaceLeft);
+				int firstLen = Math.min(realLen, buffer.length - writePosition);
+				int secondLen = Math.min(realLen - firstLen, buffer.length - markPosition - 1);
+				int written = firstLen + secondLen;
+				if (firstLen > 0){
+					src.get(buffer, writePosition, firstLen);
+				}
+				if (secondLen > 0){
+					src.get(buffer, 0, secondLen);
+					writePosition = secondLen;
+				} else {
+					writePosition += written;
+				}
+				if (writePosition == buffer.length) {
+					writePosition = 0;
+				}
+			}
+			if (src.hasRemaining()){
+				try {
+					Thread.sleep(100);
+				} catch(Exception x){
+					throw new IOException("Waiting for available space in buffer interrupted.");
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Transfer all currently available bytes to a channel.
+	 * <p>
+	 * The readable region is handed to the channel as one or two views
+	 * of the underlying array, so the bytes are copied only once, by the
+	 * channel itself.  If the channel accepts fewer bytes than offered
+	 * (a non-blocking socket, for example) only those bytes are consumed
+	 * and the rest stay in this buffer.  This method never blocks waiting
+	 * for data.
+	 *
+	 * @param target Channel to which bytes are written.
+	 * @return The number of bytes transferred, or -1 if the buffer is empty
+	 *   and the OutputStream has been closed.
+	 * @throws IOException if the InputStream is closed or the channel fails.
+	 */
+	public long transferTo(WritableByteChannel target) throws IOException {
+		synchronized (this){
+			if (inputStreamClosed) throw new IOException("InputStream has been closed; cannot read from a closed InputStream.");
+			int available = available();
+			if (available == 0){
+				return outputStreamClosed ? -1 : 0;
+			}
+			long transferred = 0;
+			while (available > 0){
+				int segment = Math.min(available, buffer.length - readPosition);
+				int written = target.write(ByteBuffer.wrap(buffer, readPosition, segment));
+				if (written <= 0){
+					break;
+				}
+				readPosition += written;
+				if (readPosition == buffer.length) {
+					readPosition = 0;
+				}
+				available -= written;
+				transferred += written;
+			}
+			ensureMark();
+			return transferred;
+		}
+	}
+
 	/**
 	 * double the size of the buffer
 	 *
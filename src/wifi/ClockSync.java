@@ -0,0 +1,186 @@
+package wifi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Keeps our local clock in step with the other stations using beacons. Beacon
+ * timestamps are corrected with measured send and receive delays, the offset
+ * to each station is tracked to estimate how fast its clock drifts against
+ * ours, and corrections are applied gradually. Following 802.11, the local time
+ * only ever moves forward.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class ClockSync {
+
+	// used until a beacon has been sent. Time only moves forward, so a guess that
+	// is too long would put every receiver ahead for good, one too short is caught up
+	private static final long defaultSendDelay = 0;
+	private static final long jumpThreshold = 1000; // errors above this are corrected at once
+	private static final double gain = 0.5; // fraction of a small error corrected per beacon
+	private static final double smoothing = 0.125; // weight of a new sample in the averages
+
+	/**
+	 * What we know about one station's clock
+	 */
+	private static class StationClock {
+		long beacons;
+		long lastRaw; // our RF clock when its last beacon arrived
+		long lastOffset; // its time minus our RF clock at that point
+		double drift; // ms its clock gains on ours per ms
+		double avgError; // average absolute sync error in ms
+		long lastError;
+	}
+
+	private Medium medium;
+	private AtomicLong localOffset;
+	private Map<Short, StationClock> stations;
+	private double sendDelay; // ms from stamping a beacon to it arriving at the others
+	private double receiveDelay; // ms from a beacon arriving to it being processed
+	private double drift; // drift applied between beacons, never negative
+	private long syncRaw; // RF clock when the offset was last updated
+	private double avgError;
+	private long beacons;
+	private boolean measuredSend;
+
+	/**
+	 * Creates a clock synchronizer
+	 * 
+	 * @param medium      Medium
+	 * @param localOffset AtomicLong offset of our local time from the RF clock
+	 */
+	public ClockSync(Medium medium, AtomicLong localOffset) {
+		this.medium = medium;
+		this.localOffset = localOffset;
+		this.stations = new HashMap<Short, StationClock>();
+		this.sendDelay = defaultSendDelay;
+	}
+
+	/**
+	 * gets the local time, including the offset from beacons and the drift since
+	 * the last beacon
+	 * 
+	 * @return time long
+	 */
+	public synchronized long localTime() {
+		long raw = medium.clock();
+		return raw + localOffset.get() + driftSince(raw);
+	}
+
+	/**
+	 * gets the time to stamp into a beacon that is about to be transmitted
+	 * 
+	 * @return time long
+	 */
+	public synchronized long beaconTime() {
+		return localTime() + Math.round(sendDelay);
+	}
+
+	/**
+	 * Records how long a beacon took from being stamped until its transmission
+	 * finished
+	 * 
+	 * @param stampedRaw long RF clock when the beacon was stamped
+	 */
+	public synchronized void beaconSent(long stampedRaw) {
+		long delay = medium.clock() - stampedRaw;
+		if (!measuredSend) {
+			sendDelay = delay;
+			measuredSend = true;
+		}
+		else {
+			sendDelay += smoothing * (delay - sendDelay);
+		}
+	}
+
+	/**
+	 * Processes the time carried by a beacon
+	 * 
+	 * @param source      short the station that sent it
+	 * @param remoteTime  long the time in the beacon
+	 * @param receivedRaw long RF clock when the beacon came off the RF layer
+	 * @return the sync error in ms, positive if the other station was ahead
+	 */
+	public synchronized long beaconReceived(short source, long remoteTime, long receivedRaw) {
+		long raw = medium.clock();
+		long processing = raw - receivedRaw;
+		receiveDelay += smoothing * (processing - receiveDelay);
+		long remoteNow = remoteTime + processing;
+		long error = remoteNow - localTime();
+
+		// drift of this station against our RF clock
+		StationClock station = stations.get(source);
+		if (station == null) {
+			station = new StationClock();
+			stations.put(source, station);
+		}
+		long offset = remoteNow - raw;
+		if (station.beacons > 0 && raw > station.lastRaw) {
+			double sample = (double) (offset - station.lastOffset) / (raw - station.lastRaw);
+			station.drift += smoothing * (sample - station.drift);
+		}
+		station.beacons++;
+		station.lastRaw = raw;
+		station.lastOffset = offset;
+		station.lastError = error;
+		station.avgError += smoothing * (Math.abs(error) - station.avgError);
+		beacons++;
+		avgError += smoothing * (Math.abs(error) - avgError);
+
+		// fold the drift so far into the offset and move forward towards the station
+		long base = localOffset.get() + driftSince(raw);
+		syncRaw = raw;
+		if (error > 0) {
+			long step = error > jumpThreshold ? error : Math.max(1, Math.round(error * gain));
+			base += step;
+			drift = Math.max(0, station.drift);
+		}
+		localOffset.set(base);
+		return error;
+	}
+
+	/**
+	 * gets the average absolute sync error over recent beacons
+	 * 
+	 * @return error double ms
+	 */
+	public synchronized double getAverageError() {
+		return avgError;
+	}
+
+	/**
+	 * Summarizes the synchronization state for the command interface
+	 * 
+	 * @return report String
+	 */
+	public synchronized String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Local offset: %d ms, drift %.1f ppm, beacons %d, avg error %.1f ms%n",
+				localOffset.get(), drift * 1e6, beacons, avgError));
+		sb.append(String.format("Send delay: %.1f ms%s, receive delay: %.1f ms%n", sendDelay,
+				measuredSend ? "" : " (default)", receiveDelay));
+		for (Map.Entry<Short, StationClock> entry : stations.entrySet()) {
+			StationClock station = entry.getValue();
+			sb.append(String.format("  Station %d: beacons %d, drift %.1f ppm, last error %d ms, avg error %.1f ms%n",
+					entry.getKey(), station.beacons, station.drift * 1e6, station.lastError, station.avgError));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * gets the drift correction accumulated since the offset was last updated
+	 * 
+	 * @param raw long current RF clock
+	 * @return correction long ms
+	 */
+	private long driftSince(long raw) {
+		if (drift <= 0 || raw <= syncRaw) {
+			return 0;
+		}
+		return (long) (drift * (raw - syncRaw));
+	}
+}
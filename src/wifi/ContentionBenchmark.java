@@ -0,0 +1,211 @@
+package wifi;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Measures how the MAC scales as a cell gets crowded. For 2, 4, 8, ... stations
+ * on a simulated medium, every station keeps its outgoing queue full of frames
+ * for the next station, once with random slot selection and once always
+ * selecting maxCW. Each run prints a row with the aggregate goodput, Jain's
+ * fairness index over the stations' goodput, the share of transmissions lost
+ * to collisions, and the median and 99th percentile time from send to ACK and,
+ * with the {@link LatencyProbe} stamping every payload, from send to the
+ * receiving application.
+ * Everything runs on the simulation's virtual clock with a fixed seed, so the
+ * table is the same on every machine and can be diffed between versions.
+ *
+ * <pre>
+ * java wifi.ContentionBenchmark [options]
+ *   -stations N  most stations to try (default 64)
+ *   -time T      simulated seconds per run (default 3600)
+ *   -size S      payload size in bytes (default 20)
+ *   -seed N      seed for the simulation (default 1)
+ *   -beacon B    beacon interval in seconds, -1 for none (default -1)
+ * </pre>
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class ContentionBenchmark {
+
+	private byte[] payload;
+	private long seconds;
+	private long seed;
+	private int beacon;
+
+	/**
+	 * Creates a benchmark
+	 *
+	 * @param size    int payload size
+	 * @param seconds long simulated seconds per run
+	 * @param seed    long
+	 * @param beacon  int beacon interval
+	 */
+	public ContentionBenchmark(int size, long seconds, long seed, int beacon) {
+		this.payload = new byte[size];
+		this.seconds = seconds;
+		this.seed = seed;
+		this.beacon = beacon;
+	}
+
+	/**
+	 * Runs one simulation and prints its row
+	 *
+	 * @param stations int
+	 * @param maxCW    boolean always select maxCW instead of a random slot
+	 */
+	public void run(int stations, boolean maxCW) {
+		final SimScheduler scheduler = new SimScheduler(seed);
+		SimMedium medium = new SimMedium(scheduler);
+		// the link layer's output is not interesting here
+		PrintWriter quiet = new PrintWriter(new OutputStream() {
+			public void write(int b) {
+			}
+		});
+		final LinkLayer[] links = new LinkLayer[stations];
+		final long[] received = new long[stations]; // payload bytes received from each station
+		final long[] done = new long[2]; // frames delivered and failed
+		final LatencyHistogram latency = new LatencyHistogram(); // ms from send to ACK
+		Random stagger = scheduler.random(0);
+		for (int i = 0; i < stations; i++) {
+			links[i] = new LinkLayer((short) (i + 1), quiet, medium);
+			links[i].command(2, maxCW ? 1 : 0);
+			links[i].command(3, beacon);
+			links[i].command(38, 1);
+			links[i].setReceiveListener(new ReceiveListener() {
+				public void framesReceived(List<Transmission> batch) {
+					for (Transmission t : batch) {
+						received[t.getSourceAddr() - 1] += t.getBuf().length;
+					}
+				}
+			}, scheduler);
+		}
+		for (int i = 0; i < stations; i++) {
+			final LinkLayer link = links[i];
+			final short dest = (short) ((i + 1) % stations + 1);
+			// send another frame whenever one is done, so the queue stays full
+			final Consumer<SendReceipt> refill = new Consumer<SendReceipt>() {
+				public void accept(SendReceipt receipt) {
+					if (receipt.isDelivered()) {
+						done[0]++;
+						latency.record(receipt.getLatencyNanos() / 1000000);
+					}
+					else {
+						done[1]++;
+					}
+					send(link, dest, this);
+				}
+			};
+			// stations start at random times in the first second, not in lockstep
+			scheduler.schedule(stagger.nextInt(1000) * 1000000L, new Runnable() {
+				public void run() {
+					int limit = new Tunables().getOutgoingLimit();
+					for (int k = 0; k < limit; k++) {
+						send(link, dest, refill);
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		scheduler.run(seconds * 1000000000L);
+		double wall = (System.nanoTime() - start) / 1e9;
+		long delivered = done[0];
+		long failed = done[1];
+		for (LinkLayer link : links) {
+			link.close();
+		}
+
+		LatencyHistogram endToEnd = new LatencyHistogram(); // ms from send to the application
+		for (LinkLayer link : links) {
+			endToEnd.add(link.getLatencyProbe().combined());
+		}
+		long total = 0;
+		double squares = 0;
+		for (long bytes : received) {
+			total += bytes;
+			squares += (double) bytes * bytes;
+		}
+		double fairness = squares == 0 ? 0.0 : (double) total * total / (stations * squares);
+		long transmissions = medium.getTransmissions();
+		System.out.printf("%8d  %-6s %11.2f %9.3f %10.1f%% %10d %10d %10d %10d %10d %8d%n", stations,
+				maxCW ? "maxCW" : "random", (double) total / seconds, fairness,
+				transmissions == 0 ? 0.0 : 100.0 * medium.getCollided() / transmissions,
+				latency.percentile(50), latency.percentile(99), endToEnd.percentile(50),
+				endToEnd.percentile(99), delivered, failed);
+		System.err.printf("%d stations %s: %d events in %.2f s%n", stations, maxCW ? "maxCW" : "random",
+				scheduler.getProcessed(), wall);
+	}
+
+	/**
+	 * Queues a frame and calls back when the sender is done with it. Nothing is
+	 * called back for a frame that was refused, which only happens once the link
+	 * layer is closed
+	 */
+	private void send(LinkLayer link, short dest, Consumer<SendReceipt> then) {
+		CompletableFuture<SendReceipt> receipt = link.sendAsync(dest, payload, payload.length);
+		if (!receipt.isDone()) {
+			receipt.thenAccept(then);
+		}
+	}
+
+	/**
+	 * Runs the benchmark, see the class documentation for options
+	 *
+	 * @param args String[]
+	 */
+	public static void main(String[] args) {
+		int maxStations = 64;
+		long seconds = 3600;
+		int size = 20;
+		long seed = 1;
+		int beacon = -1;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-stations")) {
+					maxStations = Math.max(2, Integer.parseInt(args[++i]));
+				}
+				else if (arg.equals("-time")) {
+					seconds = Math.max(1, Long.parseLong(args[++i]));
+				}
+				else if (arg.equals("-size")) {
+					size = Integer.parseInt(args[++i]);
+				}
+				else if (arg.equals("-seed")) {
+					seed = Long.parseLong(args[++i]);
+				}
+				else if (arg.equals("-beacon")) {
+					beacon = Integer.parseInt(args[++i]);
+				}
+				else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			System.err.println("Bad arguments: " + e.getMessage());
+			System.err.println("See the ContentionBenchmark class documentation for usage.");
+			System.exit(1);
+		}
+
+		System.out.println("ContentionBenchmark: " + size + " byte payloads, " + seconds
+				+ " simulated s per run, seed " + seed + ", beacons " + (beacon > 0 ? "every " + beacon + " s" : "off")
+				+ ", latencies in ms");
+		System.out.printf("%8s  %-6s %11s %9s %11s %10s %10s %10s %10s %10s %8s%n", "stations", "slots",
+				"goodput B/s", "fairness", "collisions", "ACK p50", "ACK p99", "recv p50", "recv p99", "delivered",
+				"failed");
+		ContentionBenchmark benchmark = new ContentionBenchmark(size, seconds, seed, beacon);
+		for (int stations = 2;; stations = Math.min(stations * 2, maxStations)) {
+			benchmark.run(stations, false);
+			benchmark.run(stations, true);
+			if (stations == maxStations) {
+				break;
+			}
+		}
+	}
+}
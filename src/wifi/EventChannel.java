@@ -0,0 +1,143 @@
+package wifi;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A channel of {@link LinkEvent}s from the link layer to whoever displays them.
+ * The link layer publishes events without blocking, consumers drain everything
+ * that is pending in one batch. Consumers either block in
+ * {@link #await(long)} or register a {@link Listener} that is told when events
+ * become available, so nobody has to poll.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class EventChannel {
+
+	/**
+	 * Notified when events become available
+	 */
+	public interface Listener {
+		/**
+		 * called on the publishing thread after every event, so keep it short.
+		 * Draining takes everything pending, so a call may find nothing left
+		 * 
+		 * @param channel EventChannel
+		 */
+		void eventsReady(EventChannel channel);
+	}
+
+	private ConcurrentLinkedQueue<LinkEvent> events;
+	private CopyOnWriteArrayList<Listener> listeners;
+	private AtomicInteger waiters; // threads in await(), signalled only when there are any
+	private ReentrantLock lock;
+	private Condition ready;
+
+	/**
+	 * Creates an empty channel
+	 */
+	public EventChannel() {
+		this.events = new ConcurrentLinkedQueue<LinkEvent>();
+		this.listeners = new CopyOnWriteArrayList<Listener>();
+		this.waiters = new AtomicInteger(0);
+		this.lock = new ReentrantLock();
+		this.ready = lock.newCondition();
+	}
+
+	/**
+	 * Adds an event to the channel and notifies waiting threads and listeners.
+	 * A waiter counts itself before it looks at the queue, so either we see it
+	 * here or it sees the event
+	 * 
+	 * @param event LinkEvent
+	 */
+	public void publish(LinkEvent event) {
+		events.add(event);
+		if (waiters.get() > 0) {
+			lock.lock();
+			try {
+				ready.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+		for (Listener listener : listeners) {
+			listener.eventsReady(this);
+		}
+	}
+
+	/**
+	 * Moves every pending event into the given collection in publishing order
+	 * 
+	 * @param into Collection<LinkEvent>
+	 * @return number of events drained int
+	 */
+	public int drainTo(Collection<LinkEvent> into) {
+		int count = 0;
+		LinkEvent event;
+		while ((event = events.poll()) != null) {
+			into.add(event);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Blocks until events are pending or the timeout expires
+	 * 
+	 * @param timeout long milliseconds
+	 * @return true if events are pending
+	 */
+	public boolean await(long timeout) {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+		lock.lock();
+		waiters.incrementAndGet();
+		try {
+			while (events.isEmpty() && nanos > 0) {
+				nanos = ready.awaitNanos(nanos);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			waiters.decrementAndGet();
+			lock.unlock();
+		}
+		return !events.isEmpty();
+	}
+
+	/**
+	 * checks if events are pending
+	 * 
+	 * @return true if there are no pending events
+	 */
+	public boolean isEmpty() {
+		return events.isEmpty();
+	}
+
+	/**
+	 * Registers a listener that is told whenever an event is published
+	 * 
+	 * @param listener Listener
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener
+	 * 
+	 * @param listener Listener
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+}
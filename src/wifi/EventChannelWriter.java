@@ -0,0 +1,79 @@
+package wifi;
+
+import java.io.Writer;
+
+/**
+ * A Writer that turns each line written to it into a log {@link LinkEvent} on
+ * an {@link EventChannel}. Wrapping it in a PrintWriter lets the link layer keep
+ * using println() for its output.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class EventChannelWriter extends Writer {
+
+	private EventChannel channel;
+	private StringBuilder line; // text of the line that has not been ended yet
+
+	/**
+	 * Creates a writer that publishes onto the given channel
+	 * 
+	 * @param channel EventChannel
+	 */
+	public EventChannelWriter(EventChannel channel) {
+		this.channel = channel;
+		this.line = new StringBuilder();
+	}
+
+	/**
+	 * Publishes one event per completed line, the rest is kept until its newline
+	 * arrives
+	 */
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		synchronized (lock) {
+			int start = off;
+			int end = off + len;
+			for (int i = off; i < end; i++) {
+				if (cbuf[i] == '\n') {
+					line.append(cbuf, start, i - start);
+					publishLine();
+					start = i + 1;
+				}
+			}
+			line.append(cbuf, start, end - start);
+		}
+	}
+
+	/**
+	 * Partial lines are only published once they are finished, so there is
+	 * nothing to flush
+	 */
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * Publishes whatever is left of the last line
+	 */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			if (line.length() > 0) {
+				publishLine();
+			}
+		}
+	}
+
+	/**
+	 * Publishes the current line without its line terminator and starts a new one
+	 */
+	private void publishLine() {
+		int len = line.length();
+		if (len > 0 && line.charAt(len - 1) == '\r') {
+			line.setLength(len - 1);
+		}
+		channel.publish(LinkEvent.log(line.toString()));
+		line.setLength(0);
+	}
+}
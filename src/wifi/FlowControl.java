@@ -0,0 +1,110 @@
+package wifi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers how much receive buffer each destination advertised in its last
+ * ACK, so the sender can hold a frame back while the destination's application
+ * is behind instead of retransmitting into a full queue. A destination that
+ * stays full is probed again after the pause time, since the ACK to that frame
+ * is the only way we hear about the space freeing up. Only the most recently
+ * used destinations are remembered.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class FlowControl {
+
+	private static final int maxDestinations = 128;
+
+	/**
+	 * What one destination last advertised
+	 */
+	private static class Window {
+		int free; // bytes
+		long advertisedAt; // ms
+	}
+
+	private LinkedHashMap<Short, Window> windows;
+	private long pauses;
+	private long pausedMillis;
+
+	/**
+	 * Creates an empty table
+	 */
+	public FlowControl() {
+		// access ordered so the eldest entry is the least recently used
+		this.windows = new LinkedHashMap<Short, Window>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Short, Window> eldest) {
+				return size() > maxDestinations;
+			}
+		};
+	}
+
+	/**
+	 * Records the free space a destination advertised in an ACK
+	 *
+	 * @param dest short
+	 * @param free int bytes
+	 * @param now  long ms
+	 */
+	public synchronized void advertised(short dest, int free, long now) {
+		Window window = windows.get(dest);
+		if (window == null) {
+			window = new Window();
+			windows.put(dest, window);
+		}
+		window.free = free;
+		window.advertisedAt = now;
+	}
+
+	/**
+	 * How long to hold a frame back before sending it
+	 *
+	 * @param dest    short
+	 * @param bytes   int size of the frame
+	 * @param now     long ms
+	 * @param pauseMs int longest time to wait for a full destination
+	 * @return ms to wait, 0 to send now
+	 */
+	public synchronized long pauseFor(short dest, int bytes, long now, int pauseMs) {
+		Window window = windows.get(dest);
+		if (window == null || window.free >= bytes || pauseMs <= 0) {
+			return 0;
+		}
+		long wait = window.advertisedAt + pauseMs - now;
+		if (wait <= 0) {
+			// probe, the ACK brings a new advertisement
+			return 0;
+		}
+		return wait;
+	}
+
+	/**
+	 * Counts a frame that was held back
+	 *
+	 * @param millis long how long it waited
+	 */
+	public synchronized void paused(long millis) {
+		pauses++;
+		pausedMillis += millis;
+	}
+
+	/**
+	 * Summarizes the advertised space per destination
+	 *
+	 * @return report String
+	 */
+	public synchronized String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Flow control: ").append(pauses).append(" frames held back for ").append(pausedMillis)
+				.append(" ms in total\n");
+		for (Map.Entry<Short, Window> entry : windows.entrySet()) {
+			sb.append("	").append(entry.getKey()).append(": ").append(entry.getValue().free)
+					.append(" bytes free\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,110 @@
+package wifi;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded single-producer, single-consumer ring of raw frames and the times
+ * they arrived. The RF pull thread puts, the validation stage takes, and
+ * neither ever locks: each side only writes its own counter, and the other
+ * side reads it to see how far it may go. The consumer parks while the ring is
+ * empty and the producer unparks it when it puts a frame.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class FrameRing {
+
+	private byte[][] frames;
+	private long[] receivedAt; // RF clock
+	private long[] receivedNanos; // System.nanoTime()
+	private int mask;
+	private AtomicLong head; // next slot to take, written by the consumer
+	private AtomicLong tail; // next slot to put, written by the producer
+	private volatile Thread waiting; // the consumer while it is parked
+
+	/**
+	 * Creates a ring
+	 *
+	 * @param capacity int rounded up to a power of two
+	 */
+	public FrameRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.frames = new byte[size][];
+		this.receivedAt = new long[size];
+		this.receivedNanos = new long[size];
+		this.mask = size - 1;
+		this.head = new AtomicLong(0);
+		this.tail = new AtomicLong(0);
+	}
+
+	/**
+	 * Puts a frame, only called by the producer
+	 *
+	 * @param frame         byte[]
+	 * @param at            long RF clock when it arrived
+	 * @param nanos         long System.nanoTime() when it arrived
+	 * @return false if the ring is full
+	 */
+	public boolean put(byte[] frame, long at, long nanos) {
+		long t = tail.get();
+		if (t - head.get() > mask) {
+			return false;
+		}
+		int i = (int) t & mask;
+		frames[i] = frame;
+		receivedAt[i] = at;
+		receivedNanos[i] = nanos;
+		// a full write, so it can't pass the read of waiting below
+		tail.set(t + 1);
+		Thread consumer = waiting;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+		return true;
+	}
+
+	/**
+	 * Takes up to max frames into the given arrays, parking until at least one is
+	 * there or the thread is interrupted. Only called by the consumer
+	 *
+	 * @param frames        byte[][] filled from index 0
+	 * @param receivedAt    long[]
+	 * @param receivedNanos long[]
+	 * @return how many frames were taken, 0 if interrupted
+	 */
+	public int take(byte[][] frames, long[] receivedAt, long[] receivedNanos) {
+		long h = head.get();
+		long available;
+		while ((available = tail.get() - h) == 0) {
+			if (Thread.interrupted()) {
+				return 0;
+			}
+			waiting = Thread.currentThread();
+			// check again so a put between the test and the flag isn't missed
+			if (tail.get() == h) {
+				LockSupport.park(this);
+			}
+			waiting = null;
+		}
+		int n = (int) Math.min(available, frames.length);
+		for (int k = 0; k < n; k++) {
+			int i = (int) (h + k) & mask;
+			frames[k] = this.frames[i];
+			receivedAt[k] = this.receivedAt[i];
+			receivedNanos[k] = this.receivedNanos[i];
+			this.frames[i] = null;
+		}
+		head.lazySet(h + n);
+		return n;
+	}
+
+	/**
+	 * gets the number of frames waiting
+	 *
+	 * @return size int
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+}
@@ -0,0 +1,129 @@
+package wifi;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The multicast groups a link layer has joined, kept as one bit per 16 bit
+ * address so the receiver can filter a group frame with a single lookup.
+ * Addresses from 0xF000 up to, but not including, the broadcast address are
+ * group addresses. Frames sent to them are not ACKed.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class GroupMembership {
+
+	private static final int firstGroup = 0xF000;
+	private static final int lastGroup = 0xFFFE;
+
+	private AtomicLongArray bits; // bit (addr & 0xFFFF) is set when the group is joined
+
+	/**
+	 * Creates an empty membership
+	 */
+	public GroupMembership() {
+		this.bits = new AtomicLongArray(1 << 10);
+	}
+
+	/**
+	 * Tells whether an address is a multicast group address
+	 *
+	 * @param addr short
+	 * @return true for group addresses
+	 */
+	public static boolean isGroup(short addr) {
+		int a = addr & 0xFFFF;
+		return a >= firstGroup && a <= lastGroup;
+	}
+
+	/**
+	 * Tells whether a frame to this address is sent without waiting for an ACK
+	 *
+	 * @param addr short
+	 * @return true for broadcast and group addresses
+	 */
+	public static boolean isMulticast(short addr) {
+		return addr == (short) -1 || isGroup(addr);
+	}
+
+	/**
+	 * Joins a group
+	 *
+	 * @param group short
+	 * @return false if the address is not a group address
+	 */
+	public boolean join(short group) {
+		if (!isGroup(group)) {
+			return false;
+		}
+		int a = group & 0xFFFF;
+		long mask = 1L << (a & 63);
+		long old;
+		do {
+			old = bits.get(a >>> 6);
+		} while (!bits.compareAndSet(a >>> 6, old, old | mask));
+		return true;
+	}
+
+	/**
+	 * Leaves a group
+	 *
+	 * @param group short
+	 * @return true if the group had been joined
+	 */
+	public boolean leave(short group) {
+		int a = group & 0xFFFF;
+		long mask = 1L << (a & 63);
+		long old;
+		do {
+			old = bits.get(a >>> 6);
+			if ((old & mask) == 0) {
+				return false;
+			}
+		} while (!bits.compareAndSet(a >>> 6, old, old & ~mask));
+		return true;
+	}
+
+	/**
+	 * Leaves every group
+	 */
+	public void leaveAll() {
+		for (int i = 0; i < bits.length(); i++) {
+			bits.set(i, 0);
+		}
+	}
+
+	/**
+	 * Tells whether a group has been joined
+	 *
+	 * @param group short
+	 * @return true if joined
+	 */
+	public boolean contains(short group) {
+		int a = group & 0xFFFF;
+		return (bits.get(a >>> 6) & (1L << (a & 63))) != 0;
+	}
+
+	/**
+	 * Lists the joined groups
+	 *
+	 * @return report String
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder("Groups joined:");
+		int count = 0;
+		for (int i = firstGroup >>> 6; i < bits.length(); i++) {
+			long word = bits.get(i);
+			while (word != 0) {
+				int bit = Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				sb.append(' ').append((i << 6) | bit);
+				count++;
+			}
+		}
+		if (count == 0) {
+			sb.append(" none");
+		}
+		return sb.append('\n').toString();
+	}
+}
@@ -0,0 +1,387 @@
+package wifi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A command-line client that drives the link layer without a GUI. It sends
+ * generated traffic through {@link JavaGUIAdapter} and reports goodput, loss,
+ * retries and latency at regular intervals and once more when it finishes.
+ * Every payload starts with a sequence number, counted for each destination
+ * on its own, and the time it was handed to the link layer, so receiving
+ * stations running this client can measure loss and latency.
+ * 
+ * <pre>
+ * java wifi.HeadlessClient [options]
+ *   -mac N          our MAC address (default random 701-800)
+ *   -dest A,B,...   unicast destinations, used round-robin (default none, receive only)
+ *   -bcast          send to the broadcast address instead
+ *   -rate R         frames per second (default 10)
+ *   -burst B        frames sent back-to-back per burst (default 1)
+ *   -size S1,S2,... payload sizes in bytes, picked at random (default 100)
+ *   -time T         seconds to run, 0 runs forever (default 30)
+ *   -report T       seconds between reports (default 5)
+ *   -seed N         seed for payload size selection (default 1)
+ *   -verbose        print the link layer's output too
+ * </pre>
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class HeadlessClient {
+
+	private static final int HEADER_BYTES = 12; // sequence number and timestamp
+	private static final long START_MILLIS = System.currentTimeMillis();
+	private static final long START_NANOS = System.nanoTime();
+
+	private JavaGUIAdapter adapter;
+	private short[] dests;
+	private int rate;
+	private int burst;
+	private int[] sizes;
+	private Random random;
+	private boolean verbose;
+
+	// sender side counters
+	private AtomicLong sent = new AtomicLong();
+	private AtomicLong rejected = new AtomicLong();
+	private long acked;
+	private long failed;
+	private long retries;
+
+	// receiver side counters, guarded by this
+	private long received;
+	private long receivedBytes;
+	private long reportedBytes; // receivedBytes at the start of the interval
+	private long lost;
+	private HashMap<Short, Long> lastSeq = new HashMap<Short, Long>();
+	private LatencyHistogram interval = new LatencyHistogram();
+	private LatencyHistogram overall = new LatencyHistogram();
+
+	/**
+	 * Creates a client
+	 * 
+	 * @param adapter JavaGUIAdapter already initialized
+	 * @param dests   short[] destinations, empty to only receive
+	 * @param rate    int frames per second
+	 * @param burst   int frames per burst
+	 * @param sizes   int[] payload sizes
+	 * @param seed    long
+	 * @param verbose boolean
+	 */
+	public HeadlessClient(JavaGUIAdapter adapter, short[] dests, int rate, int burst, int[] sizes, long seed,
+			boolean verbose) {
+		this.adapter = adapter;
+		this.dests = dests;
+		this.rate = Math.max(1, rate);
+		this.burst = Math.max(1, burst);
+		this.sizes = sizes;
+		this.random = new Random(seed);
+		this.verbose = verbose;
+	}
+
+	/**
+	 * gets a wall clock time in microseconds that is comparable between processes
+	 * on the same host
+	 * 
+	 * @return time long
+	 */
+	static long wallMicros() {
+		return START_MILLIS * 1000 + (System.nanoTime() - START_NANOS) / 1000;
+	}
+
+	/**
+	 * Starts listening for incoming data
+	 */
+	public void startReceiving() {
+		adapter.setIncomingDataListener(new JavaGUIAdapter.IncomingDataListener() {
+			public void incomingData(List<byte[]> messages) {
+				long now = wallMicros();
+				for (byte[] message : messages) {
+					received(message, now);
+				}
+			}
+		}, Executors.newSingleThreadExecutor());
+	}
+
+	/**
+	 * Accounts for one incoming message, which holds the source address followed by
+	 * the payload
+	 * 
+	 * @param message byte[]
+	 * @param now     long microseconds
+	 */
+	private synchronized void received(byte[] message, long now) {
+		short source = (short) (((message[0] & 0xFF) << 8) | (message[1] & 0xFF));
+		int len = message.length - 2;
+		received++;
+		receivedBytes += len;
+		if (len < HEADER_BYTES) {
+			return;
+		}
+		long seq = readLong(message, 2, 4);
+		long stamp = readLong(message, 6, 8);
+		Long last = lastSeq.get(source);
+		if (last != null && seq > last + 1) {
+			lost += seq - last - 1;
+		}
+		if (last == null || seq > last) {
+			lastSeq.put(source, seq);
+		}
+		interval.record(now - stamp);
+	}
+
+	/**
+	 * Sends traffic until the given time has passed
+	 * 
+	 * @param seconds int, 0 to send forever
+	 */
+	public void sendTraffic(int seconds) {
+		long end = seconds > 0 ? System.nanoTime() + seconds * 1000000000L : Long.MAX_VALUE;
+		long period = 1000000000L * burst / rate;
+		long next = System.nanoTime();
+		int destIndex = 0;
+		// each receiver checks for gaps in what it gets from us, so number per destination
+		long[] seqs = new long[dests.length];
+		while (System.nanoTime() < end) {
+			for (int i = 0; i < burst; i++) {
+				int index = destIndex;
+				short dest = dests[index];
+				destIndex = (destIndex + 1) % dests.length;
+				int size = Math.max(HEADER_BYTES, sizes[random.nextInt(sizes.length)]);
+				byte[] payload = new byte[size];
+				writeLong(payload, 0, 4, seqs[index]);
+				writeLong(payload, 4, 8, wallMicros());
+				if (adapter.sendOutgoingData(dest, payload) > 0) {
+					seqs[index]++;
+					sent.incrementAndGet();
+				}
+				else {
+					rejected.incrementAndGet();
+				}
+			}
+			next += period;
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				sleepNanos(wait);
+			}
+			else {
+				next = System.nanoTime(); // fell behind, don't try to catch up
+			}
+		}
+	}
+
+	/**
+	 * Drains the link layer's events, counting ACKs, failures and retries
+	 */
+	private synchronized void drainEvents() {
+		ArrayList<LinkEvent> events = new ArrayList<LinkEvent>();
+		adapter.getEventChannel().drainTo(events);
+		for (LinkEvent event : events) {
+			if (event.getType() == LinkEvent.Type.log) {
+				if (verbose) {
+					System.out.println(event.getText());
+				}
+			}
+			else if (event.getType() == LinkEvent.Type.status) {
+				retries += event.getRetries();
+				if (event.getCode() == 4) {
+					acked++;
+				}
+				else if (event.getCode() == 5) {
+					failed++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prints one line of statistics. Counters are totals since the start, goodput
+	 * and latency cover the given period
+	 * 
+	 * @param label   String
+	 * @param bytes   long payload bytes received during the period
+	 * @param seconds double length of the period
+	 * @param latency LatencyHistogram for the period
+	 */
+	private synchronized void report(String label, long bytes, double seconds, LatencyHistogram latency) {
+		drainEvents();
+		long expected = received + lost;
+		System.out.printf("%-8s sent %d (%d rejected) acked %d failed %d retries %d | recv %d goodput %.1f kB/s"
+				+ " loss %.2f%% | latency us p50 %d p90 %d p99 %d max %d%n", label, sent.get(), rejected.get(), acked,
+				failed, retries, received, bytes / 1000.0 / Math.max(seconds, 0.001),
+				expected == 0 ? 0.0 : 100.0 * lost / expected, latency.percentile(50), latency.percentile(90),
+				latency.percentile(99), latency.max());
+	}
+
+	/**
+	 * Prints a report every interval, and a summary once the traffic is done
+	 * 
+	 * @param seconds       int total run time, 0 to run forever
+	 * @param reportSeconds int
+	 */
+	public void run(final int seconds, int reportSeconds) {
+		final long start = System.nanoTime();
+		Thread traffic = null;
+		if (dests.length > 0) {
+			traffic = new Thread(new Runnable() {
+				public void run() {
+					sendTraffic(seconds);
+				}
+			}, "HeadlessClient traffic");
+			traffic.setDaemon(true);
+			traffic.start();
+		}
+		long end = seconds > 0 ? start + seconds * 1000000000L : Long.MAX_VALUE;
+		while (System.nanoTime() < end) {
+			long intervalStart = System.nanoTime();
+			sleepNanos(Math.min(reportSeconds * 1000000000L, end - intervalStart));
+			long now = System.nanoTime();
+			synchronized (this) {
+				report(String.format("%6.1fs", (now - start) / 1e9), receivedBytes - reportedBytes,
+						(now - intervalStart) / 1e9, interval);
+				reportedBytes = receivedBytes;
+				overall.add(interval);
+				interval.reset();
+			}
+		}
+		if (traffic != null) {
+			try {
+				traffic.join(1000);
+			}
+			catch (InterruptedException e) {
+				// report what we have
+			}
+		}
+		synchronized (this) {
+			overall.add(interval);
+			report("total", receivedBytes, (System.nanoTime() - start) / 1e9, overall);
+		}
+	}
+
+	/**
+	 * writes the low len bytes of a value into an array, most significant first
+	 */
+	private static void writeLong(byte[] buf, int off, int len, long value) {
+		for (int i = 0; i < len; i++) {
+			buf[off + i] = (byte) (value >> (8 * (len - 1 - i)));
+		}
+	}
+
+	/**
+	 * reads len bytes from an array as an unsigned value, most significant first
+	 */
+	private static long readLong(byte[] buf, int off, int len) {
+		long value = 0;
+		for (int i = 0; i < len; i++) {
+			value = (value << 8) | (buf[off + i] & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * puts the calling thread to sleep
+	 * 
+	 * @param nanos long
+	 */
+	private static void sleepNanos(long nanos) {
+		try {
+			Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * parses a comma separated list of numbers
+	 */
+	private static int[] parseList(String list) {
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+
+	/**
+	 * Parses the command line, starts the link layer and runs the client
+	 * 
+	 * @param args see the class description
+	 */
+	public static void main(String[] args) {
+		short mac = (short) (new Random().nextInt(100) + 701);
+		short[] dests = new short[0];
+		int rate = 10;
+		int burst = 1;
+		int[] sizes = { 100 };
+		int seconds = 30;
+		int reportSeconds = 5;
+		long seed = 1;
+		boolean verbose = false;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-mac")) {
+					mac = Short.parseShort(args[++i]);
+				}
+				else if (arg.equals("-dest")) {
+					int[] list = parseList(args[++i]);
+					dests = new short[list.length];
+					for (int j = 0; j < list.length; j++) {
+						dests[j] = (short) list[j];
+					}
+				}
+				else if (arg.equals("-bcast")) {
+					dests = new short[] { (short) -1 };
+				}
+				else if (arg.equals("-rate")) {
+					rate = Integer.parseInt(args[++i]);
+				}
+				else if (arg.equals("-burst")) {
+					burst = Integer.parseInt(args[++i]);
+				}
+				else if (arg.equals("-size")) {
+					sizes = parseList(args[++i]);
+				}
+				else if (arg.equals("-time")) {
+					seconds = Integer.parseInt(args[++i]);
+				}
+				else if (arg.equals("-report")) {
+					reportSeconds = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if (arg.equals("-seed")) {
+					seed = Long.parseLong(args[++i]);
+				}
+				else if (arg.equals("-verbose")) {
+					verbose = true;
+				}
+				else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			System.err.println("Bad arguments: " + e.getMessage());
+			System.err.println("See the HeadlessClient class documentation for usage.");
+			System.exit(1);
+		}
+
+		JavaGUIAdapter adapter = new JavaGUIAdapter();
+		if (adapter.initializeLinkLayer(mac) != 0) {
+			System.err.println("Could not initialize the link layer");
+			System.exit(1);
+		}
+		System.out.println("HeadlessClient on MAC " + mac + ", sending to " + java.util.Arrays.toString(dests) + " at "
+				+ rate + " frames/s in bursts of " + burst + ", sizes " + java.util.Arrays.toString(sizes));
+		HeadlessClient client = new HeadlessClient(adapter, dests, rate, burst, sizes, seed, verbose);
+		client.startReceiving();
+		client.run(seconds, reportSeconds);
+		System.exit(0);
+	}
+}
@@ -1,9 +1,8 @@
 package wifi;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * This class acts as a thin layer between the GUI client code and the Java-based
@@ -17,8 +16,8 @@ import java.io.PrintWriter;
 public class JavaGUIAdapter implements GUIClientInterface 
 {
 	private static Dot11Interface theDot11Layer;
-	private static CircularByteBuffer cbb;
-	private static BufferedReader reader;
+	private static EventChannel events;
+	private static ArrayList<LinkEvent> drained = new ArrayList<LinkEvent>();
 
 	/**
 	 * An array of addresses to use for the "send" buttons in the GUI.
@@ -30,10 +29,9 @@ public class JavaGUIAdapter implements GUIClientInterface
 	}
 
 	/**
-	 * Create an instance of the 802.11~ layer.  It wraps a PrintWriter around a
-	 * BufferedReader that's wrapped around a CircularByteBuffer (whew!) so that
-	 * we can read the text that the 802.11~ layer writes to the stream and 
-	 * display it in the GUI's window.
+	 * Create an instance of the 802.11~ layer.  The layer publishes its output,
+	 * received messages and status changes onto an EventChannel, which we drain
+	 * to get the text to display in the GUI's window.
 	 * 
 	 * @param MACaddr  The MAC address passed to the 802.11~ constructor.
 	 * @return Returns 0 on success, -1 if an error occurs.
@@ -41,9 +39,8 @@ public class JavaGUIAdapter implements GUIClientInterface
 	public int initializeLinkLayer(short MACaddr) {
 
 		try {
-			cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
-			reader = new BufferedReader(new InputStreamReader(cbb.getInputStream()));
-			theDot11Layer = new LinkLayer(MACaddr, new PrintWriter(cbb.getOutputStream(), true));
+			events = new EventChannel();
+			theDot11Layer = new LinkLayer(MACaddr, events);
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
 			return -1;
@@ -59,9 +56,10 @@ public class JavaGUIAdapter implements GUIClientInterface
 	 * @return An array of bytes containing MAC addresses and data
 	 */
 	public byte[] watchForIncomingData() {
-		// Create a Transmission object, and pass it to the recv() call
-		byte[] buf = new byte[2048];
-		Transmission t = new Transmission((short)0, (short)0, buf);
+		// Pass a Transmission to the recv() call.  recv() hands over the frame's
+		// own data array, so no buffer is needed.  Each call gets its own, so
+		// calls from different threads can't overwrite each other's frame.
+		Transmission t = new Transmission((short)0, (short)0, null);
 		int result = theDot11Layer.recv(t); 
 
 		// See if there was any data in the transmission
@@ -79,6 +77,40 @@ public class JavaGUIAdapter implements GUIClientInterface
 		return data;
 	}
 
+	/**
+	 * Asks the 802.11~ layer to push arriving data to the callback instead of the
+	 * GUI calling watchForIncomingData().  Each call receives every message that
+	 * was waiting, each formatted the way watchForIncomingData() returns it.
+	 * @param callback  Receives the batches of incoming data
+	 * @param executor  The executor the callback runs on
+	 */
+	public void setIncomingDataListener(final IncomingDataListener callback, Executor executor) {
+		((LinkLayer) theDot11Layer).setReceiveListener(new ReceiveListener() {
+			public void framesReceived(List<Transmission> batch) {
+				ArrayList<byte[]> messages = new ArrayList<byte[]>(batch.size());
+				for (Transmission t : batch) {
+					byte[] buf = t.getBuf();
+					byte[] data = new byte[buf.length + 2];
+					data[0] = (byte) ((t.getSourceAddr() >>> 8) & 0xFF);
+					data[1] = (byte) (t.getSourceAddr() & 0xFF);
+					System.arraycopy(buf, 0, data, 2, buf.length);
+					messages.add(data);
+				}
+				callback.incomingData(messages);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Receives incoming data pushed by the 802.11~ layer.
+	 */
+	public interface IncomingDataListener {
+		/**
+		 * @param messages  Arrays of bytes containing MAC addresses and data
+		 */
+		void incomingData(List<byte[]> messages);
+	}
+
 	/**
 	 * Wrapper around the 802.11~ layer's send routine.
 	 * @param dest  The destination MAC address
@@ -91,21 +123,41 @@ public class JavaGUIAdapter implements GUIClientInterface
 
 
 	/**
-	 * This routine pulls text from the stream to which the 802.11~ layer is writing
-	 * and returns any new text as an array of bytes.
+	 * This routine drains the events the 802.11~ layer has published and returns
+	 * the text of any new log lines as an array of bytes.
 	 * @return An array of bytes representing characters sent to output stream since last call.
 	 */
 	public byte[] pollForStreamOutput() {
-		String msg = "";
-		try {
-			while (reader.ready()) {
-				msg += reader.readLine() + "\n";
+		StringBuilder msg = new StringBuilder();
+		synchronized (drained) {
+			events.drainTo(drained);
+			for (LinkEvent event : drained) {
+				if (event.getType() == LinkEvent.Type.log) {
+					msg.append(event.getText()).append('\n');
+				}
 			}
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			drained.clear();
 		}
-		return msg.getBytes();
+		return msg.toString().getBytes();
+	}
+
+	/**
+	 * Blocks until the 802.11~ layer has published new events, so callers of
+	 * pollForStreamOutput() don't have to poll on a timer.
+	 * @param timeout  Maximum time to wait in milliseconds
+	 * @return Returns true if there are events waiting to be drained.
+	 */
+	public boolean awaitStreamOutput(long timeout) {
+		return events.await(timeout);
+	}
+
+	/**
+	 * Gives access to the structured events published by the 802.11~ layer.
+	 * Note that pollForStreamOutput() drains the same channel.
+	 * @return The channel the link layer publishes to.
+	 */
+	public EventChannel getEventChannel() {
+		return events;
 	}
 
 
@@ -0,0 +1,166 @@
+package wifi;
+
+/**
+ * A fixed-size histogram of latencies in the style of HdrHistogram. Values are
+ * grouped by their power of two, and each power of two is split into
+ * SUB_BUCKETS linear buckets, so every recorded value is kept to within about
+ * 6% of its true value while the memory used never grows.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int MAGNITUDES = 64 - SUB_BITS;
+
+	private long[] counts;
+	private long total;
+	private long min;
+	private long max;
+	private long sum;
+
+	/**
+	 * Creates an empty histogram
+	 */
+	public LatencyHistogram() {
+		this.counts = new long[(MAGNITUDES + 1) * SUB_BUCKETS];
+		reset();
+	}
+
+	/**
+	 * Records one value, negative values are counted as 0
+	 * 
+	 * @param value long
+	 */
+	public synchronized void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[bucketOf(value)]++;
+		total++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Adds all values recorded in another histogram to this one
+	 * 
+	 * @param other LatencyHistogram
+	 */
+	public synchronized void add(LatencyHistogram other) {
+		synchronized (other) {
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += other.counts[i];
+			}
+			total += other.total;
+			sum += other.sum;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+	}
+
+	/**
+	 * Gets the value below which the given percentage of values fall
+	 * 
+	 * @param percentile double between 0 and 100
+	 * @return value long, 0 if nothing was recorded
+	 */
+	public synchronized long percentile(double percentile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+		rank = Math.max(1, rank);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(max, Math.max(min, highestValueIn(i)));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * gets the number of recorded values
+	 * 
+	 * @return count long
+	 */
+	public synchronized long count() {
+		return total;
+	}
+
+	/**
+	 * gets the mean of the recorded values
+	 * 
+	 * @return mean double, 0 if nothing was recorded
+	 */
+	public synchronized double mean() {
+		return total == 0 ? 0 : (double) sum / total;
+	}
+
+	/**
+	 * gets the largest recorded value
+	 * 
+	 * @return max long, 0 if nothing was recorded
+	 */
+	public synchronized long max() {
+		return total == 0 ? 0 : max;
+	}
+
+	/**
+	 * Forgets all recorded values
+	 */
+	public synchronized void reset() {
+		java.util.Arrays.fill(counts, 0);
+		total = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	/**
+	 * Summarizes the histogram as count and the usual percentiles
+	 * 
+	 * @return String
+	 */
+	@Override
+	public synchronized String toString() {
+		return "n=" + total + " p50=" + percentile(50) + " p90=" + percentile(90) + " p99=" + percentile(99)
+				+ " max=" + max();
+	}
+
+	/**
+	 * Finds the bucket a value belongs to. Values below SUB_BUCKETS get a bucket
+	 * each, larger values share a bucket with their neighbours
+	 * 
+	 * @param value long not negative
+	 * @return bucket index int
+	 */
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		int sub = (int) (value >>> shift) - SUB_BUCKETS;
+		return (shift + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Gets the largest value that falls into a bucket
+	 * 
+	 * @param bucket int
+	 * @return value long
+	 */
+	private static long highestValueIn(int bucket) {
+		int magnitude = bucket / SUB_BUCKETS;
+		int sub = bucket % SUB_BUCKETS;
+		if (magnitude == 0) {
+			return sub;
+		}
+		return ((long) (SUB_BUCKETS + sub + 1) << (magnitude - 1)) - 1;
+	}
+}
@@ -0,0 +1,162 @@
+package wifi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import rf.RF;
+
+/**
+ * Measures how long payloads take from send() on one station to the
+ * application on another. While probing is on, send() puts a header of
+ * {@link #stampLength} bytes in front of every payload that still fits in a
+ * frame with it: a marker and our synchronized local time. The receiving link
+ * layer records the difference to its local time, in a histogram per source,
+ * and takes the header off again before the application sees the payload, so
+ * probing never changes user data. Both stations need probing on, or the
+ * header reaches the application, and the result is only as good as the
+ * clock synchronization between them. Only the most recently heard sources
+ * are kept, so the memory used stays fixed.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class LatencyProbe {
+
+	public static final int stampLength = 12;
+
+	private static final int maxSources = 64;
+	private static final int marker = 0x4C505242; // "LPRB"
+
+	private ClockSync clockSync;
+	private AtomicIntegerArray cmds;
+	private LinkedHashMap<Short, LatencyHistogram> sources;
+	private long early; // frames stamped later than they arrived, clocks out of sync
+
+	/**
+	 * Creates a probe. cmds 16 turns it on when it isn't 0
+	 *
+	 * @param clockSync ClockSync
+	 * @param cmds      AtomicIntegerArray
+	 */
+	public LatencyProbe(ClockSync clockSync, AtomicIntegerArray cmds) {
+		this.clockSync = clockSync;
+		this.cmds = cmds;
+		// access ordered so the eldest entry is the least recently heard
+		this.sources = new LinkedHashMap<Short, LatencyHistogram>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Short, LatencyHistogram> eldest) {
+				return size() > maxSources;
+			}
+		};
+	}
+
+	/**
+	 * Stamps a payload about to be sent, if probing is on and the payload fits
+	 * in a frame with the header. The caller's array is never changed
+	 *
+	 * @param data byte[]
+	 * @param len  int bytes to send
+	 * @return the header followed by the payload's first len bytes, or data
+	 *         itself
+	 */
+	public byte[] stamp(byte[] data, int len) {
+		len = Math.min(len, data.length);
+		if (cmds.get(16) == 0 || len + stampLength > RF.aMPDUMaximumLength - 10) {
+			return data;
+		}
+		byte[] stamped = new byte[stampLength + len];
+		System.arraycopy(data, 0, stamped, stampLength, len);
+		long now = clockSync.localTime();
+		for (int i = 0; i < 4; i++) {
+			stamped[i] = (byte) (marker >> 24 - (8 * i));
+		}
+		for (int i = 0; i < 8; i++) {
+			stamped[4 + i] = (byte) (now >> 56 - (8 * i));
+		}
+		return stamped;
+	}
+
+	/**
+	 * Records the latency of a payload about to be handed to the application, if
+	 * probing is on and it carries a stamp
+	 *
+	 * @param source short
+	 * @param data   byte[]
+	 * @return the payload without the stamp, or data itself
+	 */
+	public byte[] received(short source, byte[] data) {
+		if (cmds.get(16) == 0 || data == null || data.length < stampLength) {
+			return data;
+		}
+		int found = 0;
+		for (int i = 0; i < 4; i++) {
+			found = (found << 8) | (data[i] & 0xFF);
+		}
+		if (found != marker) {
+			return data;
+		}
+		long stamped = 0;
+		for (int i = 0; i < 8; i++) {
+			stamped |= ((long) (data[4 + i] & 0xFF)) << (56 - (8 * i));
+		}
+		long latency = clockSync.localTime() - stamped;
+		synchronized (this) {
+			if (latency < 0) {
+				early++;
+				latency = 0;
+			}
+			LatencyHistogram histogram = sources.get(source);
+			if (histogram == null) {
+				histogram = new LatencyHistogram();
+				sources.put(source, histogram);
+			}
+			histogram.record(latency);
+		}
+		return Arrays.copyOfRange(data, stampLength, data.length);
+	}
+
+	/**
+	 * gets the latencies from every source combined
+	 *
+	 * @return a new LatencyHistogram in ms
+	 */
+	public synchronized LatencyHistogram combined() {
+		LatencyHistogram all = new LatencyHistogram();
+		for (LatencyHistogram histogram : sources.values()) {
+			all.add(histogram);
+		}
+		return all;
+	}
+
+	/**
+	 * Forgets everything recorded so far
+	 */
+	public synchronized void reset() {
+		sources.clear();
+		early = 0;
+	}
+
+	/**
+	 * Summarizes the latency percentiles per source
+	 *
+	 * @return report String
+	 */
+	public synchronized String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Latency probe " + (cmds.get(16) == 0 ? "off" : "on") + ", " + sources.size() + " sources"
+				+ (early > 0 ? ", " + early + " frames stamped ahead of our clock" : "") + "\n");
+		// copy the keys, reading an access ordered map while iterating it reorders it
+		List<Short> heard = new ArrayList<Short>(sources.keySet());
+		for (Short source : heard) {
+			LatencyHistogram histogram = sources.get(source);
+			sb.append(String.format("  %6d: %8d frames, p50 %8d ms, p90 %8d ms, p99 %8d ms, max %8d ms%n", source,
+					histogram.count(), histogram.percentile(50), histogram.percentile(90),
+					histogram.percentile(99), histogram.max()));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,149 @@
+package wifi;
+
+/**
+ * A single event published by the link layer onto an {@link EventChannel}.
+ * An event is either a line of log output, a message that was accepted by the
+ * receiver, or a change in the status of an outgoing frame.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class LinkEvent {
+
+	/**
+	 * the kinds of events the link layer publishes
+	 */
+	public enum Type {
+		log, message, status
+	};
+
+	private final Type type;
+	private final String text;
+	private final short addr;
+	private final byte[] data;
+	private final int code;
+	private final int retries;
+
+	/**
+	 * Creates an event, use the static factory methods instead
+	 * 
+	 * @param type    Type
+	 * @param text    String
+	 * @param addr    short
+	 * @param data    byte[]
+	 * @param code    int
+	 * @param retries int
+	 */
+	private LinkEvent(Type type, String text, short addr, byte[] data, int code, int retries) {
+		this.type = type;
+		this.text = text;
+		this.addr = addr;
+		this.data = data;
+		this.code = code;
+		this.retries = retries;
+	}
+
+	/**
+	 * creates an event holding one line of log output
+	 * 
+	 * @param text String without the trailing newline
+	 * @return event LinkEvent
+	 */
+	public static LinkEvent log(String text) {
+		return new LinkEvent(Type.log, text, (short) 0, null, 0, 0);
+	}
+
+	/**
+	 * creates an event for a message accepted by the receiver
+	 * 
+	 * @param source short
+	 * @param data   byte[]
+	 * @return event LinkEvent
+	 */
+	public static LinkEvent message(short source, byte[] data) {
+		return new LinkEvent(Type.message, null, source, data, 0, 0);
+	}
+
+	/**
+	 * creates an event for a status change of an outgoing frame
+	 * 
+	 * @param code    int status code, see {@link LinkLayer#status()}
+	 * @param dest    short
+	 * @param retries int number of retransmissions the frame needed
+	 * @return event LinkEvent
+	 */
+	public static LinkEvent status(int code, short dest, int retries) {
+		return new LinkEvent(Type.status, null, dest, null, code, retries);
+	}
+
+	/**
+	 * gets the type of the event
+	 * 
+	 * @return type Type
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * gets the log text of a log event
+	 * 
+	 * @return text String
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * gets the source of a message event or the destination of a status event
+	 * 
+	 * @return address short
+	 */
+	public short getAddr() {
+		return addr;
+	}
+
+	/**
+	 * gets the data of a message event
+	 * 
+	 * @return data byte[]
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * gets the status code of a status event
+	 * 
+	 * @return code int
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * gets the number of retries of a status event
+	 * 
+	 * @return retries int
+	 */
+	public int getRetries() {
+		return retries;
+	}
+
+	/**
+	 * toString method for the event class
+	 * 
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		switch (type) {
+		case log:
+			return text;
+		case message:
+			return "Message from " + addr + " (" + data.length + " bytes)";
+		default:
+			return "Status " + code + " for " + addr + " after " + retries + " retries";
+		}
+	}
+}
@@ -1,11 +1,16 @@
 package wifi;
 
 import java.io.PrintWriter;
-import java.util.HashMap;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import rf.RF;
 
@@ -15,19 +20,40 @@ import rf.RF;
  * 
  * @author richards, Matthew Zou, David Lybeck
  */
-public class LinkLayer implements Dot11Interface {
-	private RF theRF; // You'll need one of these eventually
+public class LinkLayer implements Dot11Interface, AutoCloseable {
+	private Medium medium; // the RF layer, or a simulated channel
+	private MacClock clock; // the system clock, or the simulation's
+	private SimDriver driver; // runs the MAC instead of threads in a simulation
 	private short ourMAC; // Our MAC address
 	private PrintWriter output; // The output stream we'll write to
+	private EventChannel events; // Structured events for the GUI, may be null
 	private AtomicLong localOffset;
+	private ClockSync clockSync;
+	private GroupMembership groups; // multicast groups we receive
+	private AirtimeStats airtime;
+	private LatencyProbe probe; // send to application latency, when stamping is on
+	private StateProfile profile; // time the sender spends in each state
+	private RttEstimator rtt;
+	private FlowControl flow; // buffer space advertised by destinations
+	private TrafficShaper shaper;
 	private ArrayBlockingQueue<Packet> outgoing;
-	private ArrayBlockingQueue<Packet> incoming;
-	private ArrayBlockingQueue<Integer> acks;
+	private AtomicInteger outgoingCount; // frames admitted to outgoing, bounded by the outgoing limit
+	private AtomicReference<Tunables> tunables; // replaced, never changed, when a command sets a value
+	private StationTable stations; // every address we receive for
+	private Station station; // the station for ourMAC
+	private ArrayBlockingQueue<Packet> acks; // ACKs the receiver got, for the sender to match
 	private AtomicIntegerArray cmds;
 	private AtomicInteger status;
-	private HashMap<Short, Integer> seqNums; //contains most recently used seqNum for ever destination
 	private Sender sender;
 	private Receiver receiver;
+	private AckResponder ackResponder;
+	private CarrierSense carrier;
+	private volatile boolean started; // threads are started on first use
+	private volatile boolean closed;
+	private Thread[] threads;
+	private Timer timer;
+	private long constructNanos; // how long the constructor took
+	private long startNanos; // how long starting the threads took
 	
 
 	/**
@@ -38,36 +64,314 @@ public class LinkLayer implements Dot11Interface {
 	 * @param output Output stream associated with GUI
 	 */
 	public LinkLayer(short ourMAC, PrintWriter output) {
-		this.status = new AtomicInteger(0);
+		this(ourMAC, output, (EventChannel) null);
+	}
+
+	/**
+	 * Constructor takes a MAC address and the EventChannel onto which our output,
+	 * received messages and status changes will be published.
+	 * 
+	 * @param ourMAC MAC address
+	 * @param events Event channel associated with GUI
+	 */
+	public LinkLayer(short ourMAC, EventChannel events) {
+		this(ourMAC, new PrintWriter(new EventChannelWriter(events), true), events);
+	}
+
+	/**
+	 * Constructor for a station in a simulation. The MAC runs on the medium's
+	 * scheduler instead of threads, with its virtual clock and random numbers
+	 * seeded from the scheduler's seed and our MAC address, so a simulation run
+	 * twice gives the same results. Everything, including the application, has to
+	 * run as events on the scheduler: recv() would block it, so register a
+	 * receive listener with the scheduler as its executor instead, and use
+	 * sendAsync() receipts to learn when to send more.
+	 * 
+	 * @param ourMAC MAC address
+	 * @param output Output stream
+	 * @param medium SimMedium the station is attached to
+	 */
+	public LinkLayer(short ourMAC, PrintWriter output, SimMedium medium) {
+		this(ourMAC, output, null, medium.attach(), medium.getScheduler());
+	}
+
+	/**
+	 * Constructor used by the public constructors that use the RF layer
+	 * 
+	 * @param ourMAC MAC address
+	 * @param output Output stream associated with GUI
+	 * @param events Event channel associated with GUI, or null
+	 */
+	private LinkLayer(short ourMAC, PrintWriter output, EventChannel events) {
+		this(ourMAC, output, events, openRF(), null);
+	}
+
+	/**
+	 * Opens the RF layer
+	 * 
+	 * @return the RF layer as a medium, or null if it couldn't be opened
+	 */
+	private static Medium openRF() {
 		try{
-			theRF = new RF(null, null);
+			return new RFMedium(new RF(null, null));
 		}
 		catch(Exception e){
+			return null;
+		}
+	}
+
+	/**
+	 * Constructor used by the other constructors
+	 * 
+	 * @param ourMAC    MAC address
+	 * @param output    Output stream
+	 * @param events    Event channel, or null
+	 * @param medium    Medium, null if the RF layer couldn't be opened
+	 * @param scheduler SimScheduler for a simulation, null to run on threads
+	 */
+	private LinkLayer(short ourMAC, PrintWriter output, EventChannel events, Medium medium, SimScheduler scheduler) {
+		long constructStart = System.nanoTime();
+		this.status = new AtomicInteger(0);
+		if (medium == null) {
 			status.set(3);
 		}
+		this.medium = medium;
+		this.clock = scheduler != null ? scheduler : MacClock.system;
 		this.ourMAC = ourMAC;
 		this.output = output;
+		this.events = events;
 		this.localOffset = new AtomicLong(0);
-		this.outgoing = new ArrayBlockingQueue<Packet>(10);
-		this.incoming = new ArrayBlockingQueue<Packet>(10);
-		this.acks = new ArrayBlockingQueue<Integer>(10);
-		this.cmds = new AtomicIntegerArray(3);
+		this.clockSync = new ClockSync(medium, localOffset);
+		this.groups = new GroupMembership();
+		this.airtime = new AirtimeStats();
+		this.profile = new StateProfile(clock);
+		this.rtt = new RttEstimator();
+		this.flow = new FlowControl();
+		this.tunables = new AtomicReference<Tunables>(new Tunables());
+		this.outgoing = new ArrayBlockingQueue<Packet>(Tunables.maxOutgoingLimit);
+		this.outgoingCount = new AtomicInteger(0);
+		this.stations = new StationTable();
+		this.station = new Station(ourMAC);
+		this.stations.add(station);
+		this.acks = new ArrayBlockingQueue<Packet>(10);
+		this.cmds = new AtomicIntegerArray(17);
 		
 		
 		this.cmds.set(2, 5); //Set beacon offset
 		this.cmds.set(0, 0); //set default debug setting
+		this.cmds.set(3, 50); //set slot grid to 50ms
+		this.cmds.set(4, RF.aSlotTime * 5); //set ack timeout floor
+		this.cmds.set(5, RF.aSlotTime * 50); //set ack timeout ceiling
+		this.cmds.set(6, 0); //set reorder buffer off
+		this.cmds.set(7, 5000); //set reorder gap timeout to 5 seconds
+		this.cmds.set(8, 0); //set promiscuous mode off
+		this.cmds.set(9, 5 * (RF.aMPDUMaximumLength - 10)); //set incoming buffer to five full frames
+		this.cmds.set(10, RF.aSlotTime * 5); //set how long to hold frames for a full destination
+		this.cmds.set(11, 0); //set global shaping rate off
+		this.cmds.set(12, 2 * RF.aMPDUMaximumLength); //set global shaping burst
+		this.cmds.set(13, 0); //set per destination shaping rate off
+		this.cmds.set(14, 2 * RF.aMPDUMaximumLength); //set per destination shaping burst
+		this.cmds.set(15, 1); //set shaping to make senders wait
+		this.cmds.set(16, 0); //set latency probe off
+		this.shaper = new TrafficShaper(cmds, clock);
+		this.probe = new LatencyProbe(clockSync, cmds);
 		
 		
 		
-		this.seqNums = new HashMap<Short, Integer>();
-		this.sender = new Sender(theRF, outgoing, acks, cmds, output, ourMAC, localOffset, status);
-		this.receiver = new Receiver(theRF, incoming, acks, cmds, output, ourMAC, localOffset, status);
-		(new Thread(sender)).start();
-		(new Thread(receiver)).start();
+		this.carrier = new CarrierSense(medium);
+		Random random = scheduler != null ? scheduler.random(ourMAC) : new Random();
+		this.sender = new Sender(medium, clock, random, outgoing, outgoingCount, tunables, acks, cmds, output, events, ourMAC, clockSync, status, airtime, profile, rtt,
+				flow, carrier);
+		this.ackResponder = new AckResponder(medium, scheduler, cmds, output);
+		// frames are pulled off the RF layer on a thread, a simulation pushes them
+		this.receiver = new Receiver(medium, scheduler == null ? (RFMedium) medium : null, clock, stations, acks, cmds, output, events, ourMAC, clockSync, groups, flow, status,
+				ackResponder);
+		if (scheduler != null) {
+			this.driver = new SimDriver(sender, receiver, (SimMedium.Endpoint) medium, acks);
+		}
 		if (cmds.get(0) == -1) {
 			output.println("LinkLayer: Constructor ran.");
 		}
 		status.set(1);
+		this.constructNanos = System.nanoTime() - constructStart;
+	}
+
+	/**
+	 * Starts the MAC threads. Called by the first send, recv or listener
+	 * registration, so a link layer that is only constructed costs no threads; a
+	 * station that should ACK and send beacons before then can call it directly.
+	 * The threads are daemons named after our MAC address.
+	 */
+	public synchronized void start() {
+		if (started || closed) {
+			return;
+		}
+		long begin = System.nanoTime();
+		if (driver != null) {
+			driver.start();
+			startNanos = System.nanoTime() - begin;
+			started = true;
+			return;
+		}
+		String name = "LinkLayer-" + ourMAC + "-";
+		threads = new Thread[] { new Thread(sender, name + "sender"), new Thread(receiver, name + "receiver"),
+				new Thread(receiver.getValidationStage(), name + "validator"),
+				new Thread(ackResponder, name + "acks"), new Thread(carrier, name + "carrier") };
+		for (Thread thread : threads) {
+			thread.setDaemon(true);
+			thread.start();
+		}
+		// give up on reorder gaps even when no more frames arrive
+		timer = new Timer(name + "reorder", true);
+		timer.schedule(new TimerTask() {
+			public void run() {
+				receiver.releaseExpired();
+			}
+		}, 50, 50);
+		startNanos = System.nanoTime() - begin;
+		started = true;
+		if (cmds.get(0) == -1) {
+			output.println("LinkLayer: Threads started.");
+		}
+	}
+
+	/**
+	 * Starts the threads if this is the first use
+	 */
+	private void ensureStarted() {
+		if (!started) {
+			start();
+		}
+	}
+
+	/**
+	 * Stops the link layer, discarding frames that haven't been sent. See
+	 * {@link #close(long)}
+	 */
+	@Override
+	public void close() {
+		close(0);
+	}
+
+	/**
+	 * Stops the link layer. Gives the sender up to the given time to finish the
+	 * frames already queued, then stops and joins the threads. Frames still queued
+	 * are discarded and their receipts fail with status 12, as do sends made
+	 * afterwards. The RF layer's own thread is not ours to stop. In a simulation
+	 * the clock only moves while the scheduler runs, so nothing is drained.
+	 * 
+	 * @param drainMillis long how long to wait for queued frames to go out
+	 */
+	public void close(long drainMillis) {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		if (started && driver != null) {
+			driver.stop();
+			sender.stop();
+			sender.discardFrames(clock.nanoTime());
+			receiver.stop();
+			ackResponder.stop();
+		}
+		else if (started) {
+			long deadline = System.currentTimeMillis() + drainMillis;
+			while ((outgoingCount.get() > 0 || !sender.isIdle()) && System.currentTimeMillis() < deadline) {
+				try {
+					Thread.sleep(10);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			timer.cancel();
+			sender.stop();
+			receiver.stop();
+			ackResponder.stop();
+			carrier.stop();
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+			for (Thread thread : threads) {
+				try {
+					// the pull thread only stops when the RF layer hands it a frame
+					thread.join(thread == threads[1] ? 50 : 1000);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		Packet packet;
+		while ((packet = outgoing.poll()) != null) {
+			outgoingCount.decrementAndGet();
+			packet.discard(clock.nanoTime());
+		}
+		for (Station each : stations.all()) {
+			each.setDispatcher(null);
+			each.clear();
+		}
+		if (cmds.get(0) == -1) {
+			output.println("LinkLayer: Closed.");
+		}
+	}
+
+	/**
+	 * gets the number of frames we received again after accepting them, for
+	 * benchmarks
+	 * 
+	 * @return duplicates long
+	 */
+	public long getDuplicates() {
+		return receiver.getDuplicates();
+	}
+
+	/**
+	 * gets the ACK responder, for benchmarks that want its counts
+	 * 
+	 * @return ackResponder AckResponder
+	 */
+	public AckResponder getAckResponder() {
+		return ackResponder;
+	}
+
+	/**
+	 * Takes a queued frame off the outgoing queue the way the sender does, for
+	 * benchmarks that measure send() without waiting for the medium
+	 *
+	 * @return packet Packet, or null if none is queued
+	 */
+	Packet takeQueued() {
+		Packet packet = outgoing.poll();
+		if (packet != null) {
+			outgoingCount.decrementAndGet();
+		}
+		return packet;
+	}
+
+	/**
+	 * gets the latency probe, for benchmarks that want its histograms
+	 * 
+	 * @return probe LatencyProbe
+	 */
+	public LatencyProbe getLatencyProbe() {
+		return probe;
+	}
+
+	/**
+	 * Summarizes how long the link layer took to come up
+	 * 
+	 * @return report String
+	 */
+	public String lifecycleReport() {
+		return "Lifecycle: constructed in " + constructNanos / 1000 + " us, "
+				+ (started ? (driver != null ? "simulation" : "threads") + " started in " + startNanos / 1000 + " us"
+						: "threads not started")
+				+ (closed ? ", closed" : "") + "\n";
 	}
 
 	/**
@@ -75,67 +379,299 @@ public class LinkLayer implements Dot11Interface {
 	 * bytes to send. See docs for full description.
 	 */
 	public int send(short dest, byte[] data, int len) {
+		return send(station, dest, data, len, null);
+	}
+
+	/**
+	 * Sends like {@link #send(short, byte[], int)}, and returns a receipt that is
+	 * completed when the sender is done with the frame: delivered once it is ACKed
+	 * (or sent, for broadcast and group frames) or failed once the retry limit is
+	 * reached. A frame send() would refuse gets a receipt that is already
+	 * completed as failed with the status code. Dependent actions that aren't
+	 * given an executor run on the sender thread, so keep them short.
+	 * 
+	 * @param dest MAC address
+	 * @param data bytes to send
+	 * @param len  number of bytes to send
+	 * @return the receipt for this frame
+	 */
+	public CompletableFuture<SendReceipt> sendAsync(short dest, byte[] data, int len) {
+		CompletableFuture<SendReceipt> receipt = new CompletableFuture<SendReceipt>();
+		send(station, dest, data, len, receipt);
+		return receipt;
+	}
+
+	/**
+	 * Sends from the given station, see {@link #send(short, byte[], int)}
+	 */
+	private int send(Station from, short dest, byte[] data, int len, CompletableFuture<SendReceipt> receipt) {
+		long start = clock.nanoTime();
+		if(closed) {
+			return refuse(receipt, dest, 12, start);
+		}
+		ensureStarted();
 		if(len < 0) {
-			status.set(6);
-			return 0;
+			return refuse(receipt, dest, 6, start);
 		}
 		if(data == null) {
-			status.set(7);
-			return 0;
+			return refuse(receipt, dest, 7, start);
 		}
-		if(outgoing.size() >= 4) {
+		// the probe's header, if any, goes on the air but isn't counted in what we return
+		byte[] payload = probe.stamp(data, len);
+		int payloadLen = payload == data ? len : payload.length;
+		int limit = tunables.get().getOutgoingLimit();
+		int queued;
+		do {
+			queued = outgoingCount.get();
+			if(queued >= limit) {
+				if (cmds.get(0) == -1) {
+					output.println("LinkLayer: Outgoing Queue size limit reached");
+				}
+				return refuse(receipt, dest, 10, start);
+			}
+		} while(!outgoingCount.compareAndSet(queued, queued + 1));
+		// the slot is taken first, so tokens are only spent on frames that get queued
+		if (!shaper.admit(dest, Math.min(payloadLen, payload.length))) {
+			outgoingCount.decrementAndGet();
 			if (cmds.get(0) == -1) {
-				output.println("LinkLayer: Outgoing Queue size limit reached");
+				output.println("LinkLayer: Over the shaping rate for " + dest);
 			}
-			status.set(10);
-			return 0;
+			return refuse(receipt, dest, 11, start);
 		}
-		int seqNum = 0;
-		if(seqNums.containsKey(dest)) {
-			//dest is in hashmap, increment most recently used seqNum
-			seqNum = (seqNums.get(dest) + 1) & 0xFFF;
-			seqNums.put(dest, seqNum);
+		// the sender numbers the frame when it takes it, so a destination's frames
+		// are numbered in the order they were queued however many threads send
+		Packet packet = new Packet((short) 0, (short) 0, 0, from.getMAC(), dest, payload, payloadLen);
+		packet.setReceipt(receipt, start);
+		// can't fail, the queue holds the largest limit
+		outgoing.offer(packet);
+		if (driver != null) {
+			driver.frameQueued();
 		}
-		else {
-			//dest is not in hashmap, use seqNum 0
-			seqNums.put(dest, 0);
-		}	
-		Packet packet = new Packet((short) 0, (short) 0, seqNum, ourMAC, dest, data, len);
-		outgoing.add(packet);
 		if (cmds.get(0) == -1) {
 			output.println("LinkLayer: Sending " + len + " bytes to " + dest);
 		}
 		return len;
 	}
 
+	/**
+	 * Replaces the tunables with a copy that has one value changed. Compare and
+	 * set, so two commands at once can't undo each other
+	 * 
+	 * @param cmd int 29 to 33
+	 * @param val int
+	 */
+	private void tune(int cmd, int val) {
+		String[] names = { "Outgoing limit", "Minimum contention window", "Maximum contention window", "Retry limit",
+				"Initial ACK timeout" };
+		Tunables current;
+		Tunables changed;
+		do {
+			current = tunables.get();
+			if (cmd == 29) {
+				changed = current.withOutgoingLimit(val);
+			}
+			else if (cmd == 30) {
+				changed = current.withCwMin(val);
+			}
+			else if (cmd == 31) {
+				changed = current.withCwMax(val);
+			}
+			else if (cmd == 32) {
+				changed = current.withRetryLimit(val);
+			}
+			else {
+				changed = current.withInitialAckTimeout(val);
+			}
+			if (changed == null) {
+				output.println(names[cmd - 29] + " value out of range: " + val);
+				status.set(9);
+				return;
+			}
+		} while (!tunables.compareAndSet(current, changed));
+		output.println(names[cmd - 29] + " value: " + val);
+	}
+
+	/**
+	 * Sets the status for a send that was refused and fails its receipt
+	 * 
+	 * @return 0, the number of bytes sent
+	 */
+	private int refuse(CompletableFuture<SendReceipt> receipt, short dest, int code, long start) {
+		status.set(code);
+		if (receipt != null) {
+			receipt.complete(new SendReceipt(dest, false, code, 0, clock.nanoTime() - start));
+		}
+		return 0;
+	}
+
 	/**
 	 * Recv method blocks until data arrives, then writes it an address info into
 	 * the Transmission object. See docs for full description.
 	 */
 	public int recv(Transmission t) {
+		return recv(station, t);
+	}
+
+	/**
+	 * Receives for the given station, see {@link #recv(Transmission)}
+	 */
+	private int recv(Station to, Transmission t) {
+		if (closed) {
+			status.set(12);
+			return 0;
+		}
+		ensureStarted();
 		if (cmds.get(0) == -1) {
 			output.println("LinkLayer: Waiting for data...");
 		}
 
-		while (incoming.isEmpty()) {
-			// Sleep for a short period to avoid busy-waiting
-			try {
-				Thread.sleep(20); // Sleep for 20 milliseconds
-			}
-			catch (InterruptedException e) {
-				status.set(2);
-				System.err.println("Error while putting thread to sleep");
-			}
+		Packet packet;
+		try {
+			packet = to.take();
 		}
-
-		Packet packet = incoming.poll();
+		catch (InterruptedException e) {
+			status.set(2);
+			Thread.currentThread().interrupt();
+			return 0;
+		}
+		byte[] data = probe.received(packet.getSource(), packet.getData());
 		t.setDestAddr(packet.getDest());
 		t.setSourceAddr(packet.getSource());
-		t.setBuf(packet.getData());
+		t.setBuf(data);
 		if (cmds.get(0) != 0) {
 			output.println("LinkLayer: Packet written to Transmission object");
 		}
-		return packet.getDataLength();
+		return data.length;
+	}
+
+	/**
+	 * Registers a listener that is called on the given executor as frames are
+	 * accepted, instead of the application calling recv(). Frames that arrive
+	 * close together are passed in one batch. While a listener is registered
+	 * recv() should not be used. Passing null as the listener goes back to recv().
+	 * 
+	 * @param listener ReceiveListener or null
+	 * @param executor Executor the listener is called on
+	 */
+	public void setReceiveListener(ReceiveListener listener, Executor executor) {
+		setReceiveListener(station, listener, executor);
+	}
+
+	/**
+	 * Registers a receive listener for the given station, see
+	 * {@link #setReceiveListener(ReceiveListener, Executor)}
+	 */
+	private void setReceiveListener(Station to, ReceiveListener listener, Executor executor) {
+		ensureStarted();
+		if (listener == null) {
+			to.setDispatcher(null);
+			return;
+		}
+		ReceiveDispatcher dispatcher = new ReceiveDispatcher(listener, executor, to, probe);
+		to.setDispatcher(dispatcher);
+		// hand over anything that arrived before the listener was registered
+		if (!to.getIncoming().isEmpty()) {
+			dispatcher.frameReady();
+		}
+	}
+
+	/**
+	 * Hosts another MAC address on this link layer. Frames for it are received by
+	 * the same RF layer and receive thread, ACKed with it as the source, and queued
+	 * separately for its application. Frames it sends share our sender. The
+	 * broadcast address and the group addresses from 0xF000 to 0xFFFE are
+	 * reserved, frames to them are multicast and never reach a station by address.
+	 * 
+	 * @param mac MAC address, not broadcast or a group and not already hosted
+	 * @return the interface for the new address, or null if it can't be added
+	 */
+	public Dot11Interface addAddress(short mac) {
+		if (GroupMembership.isMulticast(mac) || stations.get(mac) != null) {
+			status.set(9);
+			return null;
+		}
+		Station added = new Station(mac);
+		stations.add(added);
+		if (cmds.get(0) == -1) {
+			output.println("LinkLayer: Now hosting address " + mac);
+		}
+		return new VirtualStation(added);
+	}
+
+	/**
+	 * Stops hosting an address added with {@link #addAddress(short)}. Frames for it
+	 * are no longer ACKed and anything still queued for it is discarded.
+	 * 
+	 * @param mac MAC address
+	 * @return true if the address was hosted
+	 */
+	public boolean removeAddress(short mac) {
+		if (mac == ourMAC) {
+			return false;
+		}
+		Station removed = stations.remove(mac);
+		if (removed == null) {
+			return false;
+		}
+		removed.setDispatcher(null);
+		removed.clear();
+		if (cmds.get(0) == -1) {
+			output.println("LinkLayer: No longer hosting address " + mac);
+		}
+		return true;
+	}
+
+	/**
+	 * An extra address hosted by this link layer. Sending and receiving use the
+	 * address's own queue and sequence numbers, status and commands are shared.
+	 */
+	public class VirtualStation implements Dot11Interface {
+		private Station station;
+
+		private VirtualStation(Station station) {
+			this.station = station;
+		}
+
+		/**
+		 * gets the MAC address
+		 * 
+		 * @return mac short
+		 */
+		public short getMAC() {
+			return station.getMAC();
+		}
+
+		public int send(short dest, byte[] data, int len) {
+			return LinkLayer.this.send(station, dest, data, len, null);
+		}
+
+		/**
+		 * See {@link LinkLayer#sendAsync(short, byte[], int)}
+		 */
+		public CompletableFuture<SendReceipt> sendAsync(short dest, byte[] data, int len) {
+			CompletableFuture<SendReceipt> receipt = new CompletableFuture<SendReceipt>();
+			LinkLayer.this.send(station, dest, data, len, receipt);
+			return receipt;
+		}
+
+		public int recv(Transmission t) {
+			return LinkLayer.this.recv(station, t);
+		}
+
+		/**
+		 * See {@link LinkLayer#setReceiveListener(ReceiveListener, Executor)}
+		 */
+		public void setReceiveListener(ReceiveListener listener, Executor executor) {
+			LinkLayer.this.setReceiveListener(station, listener, executor);
+		}
+
+		public int status() {
+			return LinkLayer.this.status();
+		}
+
+		public int command(int cmd, int val) {
+			return LinkLayer.this.command(cmd, val);
+		}
 	}
 
 	/**
@@ -159,6 +695,78 @@ public class LinkLayer implements Dot11Interface {
 			output.println(
 					"Beacon interval: Value specifies the desired number of seconds between the start of beacon transmissions, A value of -1 disables the sending of beacon frames");
 			output.println("Current value: " + cmds.get(2) + "\n");
+			output.println("Clock sync: Any value prints the beacon synchronization state and error\n");
+			output.println(
+					"Slot grid: A value of 0 disables rounding DIFS up to a slot boundary, -1 rounds to the RF slot time and any other value rounds to that many milliseconds");
+			output.println("Current value: " + cmds.get(3) + "\n");
+			output.println("Airtime: A value of 0 prints where sending time went per frame, -1 also resets the counts\n");
+			output.println("ACK timeout floor: Value specifies the shortest time in milliseconds to wait for an ACK");
+			output.println("Current value: " + cmds.get(4) + "\n");
+			output.println("ACK timeout ceiling: Value specifies the longest time in milliseconds to wait for an ACK");
+			output.println("Current value: " + cmds.get(5) + "\n");
+			output.println("RTT: Any value prints the round trip time estimates and ACK timeouts per destination\n");
+			output.println("ACKs: Any value prints how many ACKs were sent and how close to SIFS they went out\n");
+			output.println(
+					"Reorder buffer: A value of 0 delivers frames in arrival order, any other value delivers each source's frames in sequence order, holding at most that many early frames");
+			output.println("Current value: " + cmds.get(6) + "\n");
+			output.println(
+					"Reorder timeout: Value specifies the number of milliseconds to wait for a missing frame before skipping it");
+			output.println("Current value: " + cmds.get(7) + "\n");
+			output.println("Reorder stats: Any value prints what the reorder buffer holds and has dropped\n");
+			output.println("Receive stats: Any value prints how many frames the receiver skipped and why\n");
+			output.println(
+					"Promiscuous mode: A value of 0 drops frames for other stations unchecked, any other value checks and delivers them without ACKing");
+			output.println("Current value: " + cmds.get(8) + "\n");
+			output.println(
+					"Join group: Value specifies a multicast group address from 61440 (0xF000) to 65534 to receive, frames sent to a group are not ACKed\n");
+			output.println("Leave group: Value specifies a group address to stop receiving, -1 leaves every group\n");
+			output.println("Groups: Any value lists the multicast groups joined\n");
+			output.println(
+					"Incoming buffer: Value specifies how many bytes of received frames may wait for the application, frames that don't fit are not ACKed");
+			output.println("Current value: " + cmds.get(9) + "\n");
+			output.println(
+					"Flow control pause: Value specifies the number of milliseconds to hold frames for a destination that advertised a full buffer, 0 never holds them");
+			output.println("Current value: " + cmds.get(10) + "\n");
+			output.println("Flow control: Any value prints the buffer space destinations advertised and our own\n");
+			output.println("Shaping rate: Value specifies the bytes per second we may send in total, 0 disables it");
+			output.println("Current value: " + cmds.get(11) + "\n");
+			output.println("Shaping burst: Value specifies the bytes we may send at once above the total rate");
+			output.println("Current value: " + cmds.get(12) + "\n");
+			output.println(
+					"Destination shaping rate: Value specifies the bytes per second we may send to each destination, 0 disables it");
+			output.println("Current value: " + cmds.get(13) + "\n");
+			output.println(
+					"Destination shaping burst: Value specifies the bytes we may send at once above the destination rate");
+			output.println("Current value: " + cmds.get(14) + "\n");
+			output.println(
+					"Shaping mode: A value of 0 refuses sends over the rate with status 11, any other value makes send() wait");
+			output.println("Current value: " + cmds.get(15) + "\n");
+			output.println("Shaping stats: Any value prints how many bytes were passed, delayed and refused\n");
+			output.println(
+					"Receive pipeline: A value of 0 prints how long frames wait for and spend in validation, -1 also resets the counts\n");
+			Tunables current = tunables.get();
+			output.println("Outgoing limit: Value specifies how many frames send() queues, from 1 to "
+					+ Tunables.maxOutgoingLimit);
+			output.println("Current value: " + current.getOutgoingLimit() + "\n");
+			output.println("Minimum contention window: Value specifies the window in slots after a frame is done");
+			output.println("Current value: " + current.getCwMin() + "\n");
+			output.println("Maximum contention window: Value specifies the largest the window doubles to, up to "
+					+ Tunables.maxCwMax);
+			output.println("Current value: " + current.getCwMax() + "\n");
+			output.println("Retry limit: Value specifies how many times a frame is retransmitted before it fails");
+			output.println("Current value: " + current.getRetryLimit() + "\n");
+			output.println(
+					"Initial ACK timeout: Value specifies the milliseconds to wait for an ACK from a destination with no RTT estimate");
+			output.println("Current value: " + current.getInitialAckTimeout() + "\n");
+			output.println("Tunables: Any value prints the values above\n");
+			output.println("Lifecycle: Any value prints how long the link layer took to start\n");
+			output.println("Medium: A value of 0 prints how busy the medium has been, -1 also resets the counts\n");
+			output.println(
+					"State profile: A value of 0 prints the time the sender spent in each state, overall and per frame, -1 also resets the counts\n");
+			output.println("Latency probe: A value of 0 turns it off, any other value puts a " + LatencyProbe.stampLength
+					+ " byte header with the send time in front of payloads that fit, and times and removes it on payloads we receive. Both stations need it on");
+			output.println("Current value: " + cmds.get(16) + "\n");
+			output.println("Latency: A value of 0 prints send to receive latency percentiles per source, -1 also resets them\n");
 			output.println("------------------------------------------------------");
 		}
 		else if (cmd == 1) {
@@ -173,6 +781,162 @@ public class LinkLayer implements Dot11Interface {
 			cmds.set(2, val);
 			output.println("Beacon interval value: " + val);
 		}
+		else if (cmd == 4) {
+			output.print(clockSync.report());
+			output.flush();
+		}
+		else if (cmd == 5) {
+			cmds.set(3, val);
+			output.println("Slot grid value: " + val);
+		}
+		else if (cmd == 6) {
+			output.print(airtime.report());
+			output.flush();
+			if (val == -1) {
+				airtime.reset();
+			}
+		}
+		else if (cmd == 7) {
+			cmds.set(4, val);
+			output.println("ACK timeout floor value: " + val);
+		}
+		else if (cmd == 8) {
+			cmds.set(5, val);
+			output.println("ACK timeout ceiling value: " + val);
+		}
+		else if (cmd == 9) {
+			output.print(rtt.report(cmds.get(4), cmds.get(5)));
+			output.flush();
+		}
+		else if (cmd == 10) {
+			output.print(ackResponder.report());
+			output.flush();
+		}
+		else if (cmd == 11) {
+			cmds.set(6, Math.max(0, val));
+			output.println("Reorder buffer value: " + val);
+		}
+		else if (cmd == 12) {
+			cmds.set(7, val);
+			output.println("Reorder timeout value: " + val);
+		}
+		else if (cmd == 13) {
+			output.print(receiver.reorderReport());
+			output.flush();
+		}
+		else if (cmd == 14) {
+			output.print(receiver.skippedReport());
+			output.flush();
+		}
+		else if (cmd == 15) {
+			cmds.set(8, val);
+			output.println("Promiscuous mode value: " + val);
+		}
+		else if (cmd == 16) {
+			if (groups.join((short) val)) {
+				output.println("Joined group: " + (val & 0xFFFF));
+			}
+			else {
+				output.println("Not a group address: " + val);
+				status.set(9);
+			}
+		}
+		else if (cmd == 17) {
+			if (val == -1) {
+				groups.leaveAll();
+				output.println("Left every group");
+			}
+			else if (groups.leave((short) val)) {
+				output.println("Left group: " + (val & 0xFFFF));
+			}
+			else {
+				output.println("Not in group: " + val);
+			}
+		}
+		else if (cmd == 18) {
+			output.print(groups.report());
+			output.flush();
+		}
+		else if (cmd == 19) {
+			cmds.set(9, Math.max(0, val));
+			output.println("Incoming buffer value: " + val);
+		}
+		else if (cmd == 20) {
+			cmds.set(10, val);
+			output.println("Flow control pause value: " + val);
+		}
+		else if (cmd == 21) {
+			output.print(flow.report());
+			for (Station each : stations.all()) {
+				output.println("Incoming buffer of " + each.getMAC() + ": " + each.getQueuedBytes() + " of "
+						+ cmds.get(9) + " bytes used");
+			}
+			output.flush();
+		}
+		else if (cmd == 22) {
+			cmds.set(11, Math.max(0, val));
+			output.println("Shaping rate value: " + val);
+		}
+		else if (cmd == 23) {
+			cmds.set(12, Math.max(0, val));
+			output.println("Shaping burst value: " + val);
+		}
+		else if (cmd == 24) {
+			cmds.set(13, Math.max(0, val));
+			output.println("Destination shaping rate value: " + val);
+		}
+		else if (cmd == 25) {
+			cmds.set(14, Math.max(0, val));
+			output.println("Destination shaping burst value: " + val);
+		}
+		else if (cmd == 26) {
+			cmds.set(15, val);
+			output.println("Shaping mode value: " + val);
+		}
+		else if (cmd == 27) {
+			output.print(shaper.report());
+			output.flush();
+		}
+		else if (cmd == 28) {
+			output.print(receiver.pipelineReport(val == -1));
+			output.flush();
+		}
+		else if (cmd >= 29 && cmd <= 33) {
+			tune(cmd, val);
+		}
+		else if (cmd == 34) {
+			output.print(tunables.get());
+			output.flush();
+		}
+		else if (cmd == 35) {
+			output.print(lifecycleReport());
+			output.flush();
+		}
+		else if (cmd == 36) {
+			output.print(carrier.report());
+			output.flush();
+			if (val == -1) {
+				carrier.reset();
+			}
+		}
+		else if (cmd == 37) {
+			output.print(profile.report());
+			output.flush();
+			if (val == -1) {
+				profile.reset();
+			}
+		}
+		else if (cmd == 38) {
+			cmds.set(16, val);
+			output.println("Latency probe value: " + val);
+		}
+		else if (cmd == 39) {
+			output.print(probe.report());
+			output.flush();
+			if (val == -1) {
+				probe.reset();
+			}
+		}
 		else {
 			status.set(9);
 		}
@@ -0,0 +1,136 @@
+package wifi;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * A list model holding the most recent lines of text shown in the
+ * {@link WiFiClient} output pane.  Lines are kept in a fixed-size ring, so
+ * once the limit is reached the oldest lines are dropped as new ones arrive
+ * and memory stays flat no matter how much output the link layer produces.
+ * Paired with a JList using fixed cell sizes, only the lines that are actually
+ * visible get rendered.
+ * <p>
+ * Like all Swing models, this class must only be used on the event-dispatching
+ * thread.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class LogListModel extends AbstractListModel<String>
+{
+	private static final long serialVersionUID = 1L;
+
+	private String[] lines;        // Ring of retained lines
+	private int first = 0;         // Index in lines of the oldest line
+	private int size = 0;          // Number of retained lines
+	private boolean open = false;  // Is the last line still waiting for its newline?
+
+	/**
+	 * Creates an empty model that retains at most maxLines lines.
+	 * @param maxLines  The number of lines to keep before dropping the oldest.
+	 */
+	public LogListModel(int maxLines) {
+		lines = new String[maxLines];
+	}
+
+	/**
+	 * Appends text the same way JTextArea.append() does:  text up to the first
+	 * newline continues the last line, and every newline starts a new one.
+	 * @param text  The text to append
+	 */
+	public void append(String text) {
+		if (text.length() == 0)
+			return;
+		int oldSize = size;
+		int dropped = 0;
+		boolean lastChanged = false;
+		int start = 0;
+		while (start <= text.length()) {
+			int end = text.indexOf('\n', start);
+			String piece = text.substring(start, end < 0 ? text.length() : end);
+			if (open) {
+				int last = index(size - 1);
+				lines[last] = lines[last] + piece;
+				lastChanged = true;
+			}
+			else if (end >= 0 || piece.length() > 0) {
+				if (size == lines.length) {
+					first = (first + 1) % lines.length;
+					size--;
+					dropped++;
+				}
+				lines[index(size)] = piece;
+				size++;
+			}
+			if (end < 0)
+				break;
+			open = false;
+			start = end + 1;
+		}
+		open = !text.endsWith("\n");
+
+		// Tell the list what moved.  Once lines start falling off the front
+		// every position shifts, so just report the whole range as changed.
+		if (dropped == 0) {
+			if (lastChanged)
+				fireContentsChanged(this, oldSize - 1, oldSize - 1);
+			if (size > oldSize)
+				fireIntervalAdded(this, oldSize, size - 1);
+		}
+		else {
+			if (size > oldSize)
+				fireIntervalAdded(this, oldSize, size - 1);
+			if (oldSize > 0)
+				fireContentsChanged(this, 0, Math.min(oldSize, size) - 1);
+		}
+	}
+
+	/**
+	 * Drops every retained line.
+	 */
+	public void clear() {
+		int oldSize = size;
+		first = 0;
+		size = 0;
+		open = false;
+		java.util.Arrays.fill(lines, null);
+		if (oldSize > 0)
+			fireIntervalRemoved(this, 0, oldSize - 1);
+	}
+
+	/**
+	 * Returns all retained lines as one string, with newlines between lines.
+	 * @return The retained text
+	 */
+	public String getText() {
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<size; i++) {
+			sb.append(lines[index(i)]);
+			if (i < size - 1 || !open)
+				sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return The number of retained lines
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @param i  Position of the line, 0 being the oldest retained line
+	 * @return The line at that position
+	 */
+	public String getElementAt(int i) {
+		return lines[index(i)];
+	}
+
+	/**
+	 * Maps a list position onto an index into the ring.
+	 */
+	private int index(int i) {
+		return (first + i) % lines.length;
+	}
+}
@@ -0,0 +1,50 @@
+package wifi;
+
+/**
+ * Where the MAC gets its time from. Normally that is the system clock, in a
+ * simulation it is the virtual clock of a {@link SimScheduler}.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public interface MacClock {
+
+	/**
+	 * The system clock
+	 */
+	MacClock system = new MacClock() {
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		public boolean isSimulated() {
+			return false;
+		}
+	};
+
+	/**
+	 * gets the time for measuring intervals, like System.nanoTime()
+	 *
+	 * @return time in ns
+	 */
+	long nanoTime();
+
+	/**
+	 * gets the time of day, like System.currentTimeMillis()
+	 *
+	 * @return time in ms
+	 */
+	long currentTimeMillis();
+
+	/**
+	 * Tells whether time is virtual, in which case nothing may block waiting for
+	 * it to pass
+	 *
+	 * @return true in a simulation
+	 */
+	boolean isSimulated();
+}
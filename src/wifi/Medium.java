@@ -0,0 +1,37 @@
+package wifi;
+
+/**
+ * The shared channel the MAC sends on and senses. {@link RFMedium} is the RF
+ * layer, which the receiver thread pulls frames from; {@link SimMedium} hands
+ * out simulated channels that run on a {@link SimScheduler}'s virtual clock and
+ * push arriving frames to a listener. How frames arrive differs too much
+ * between the two to be part of this interface.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public interface Medium {
+
+	/**
+	 * Transmits a frame. The RF layer returns once the frame has been sent, a
+	 * simulated medium returns right away
+	 *
+	 * @param frame byte[]
+	 * @return long the MAC clock's nanoTime() when the transmission is over
+	 */
+	long transmit(byte[] frame);
+
+	/**
+	 * Tells whether anyone is transmitting
+	 *
+	 * @return true if the medium is busy
+	 */
+	boolean inUse();
+
+	/**
+	 * gets the medium's clock
+	 *
+	 * @return time in ms
+	 */
+	long clock();
+}
@@ -1,5 +1,6 @@
 package wifi;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.zip.CRC32;
 
 import rf.RF;
@@ -15,6 +16,8 @@ public class Packet {
 
 	private byte[] frame;
 	private int dataLength;
+	private CompletableFuture<SendReceipt> receipt; // completed when the sender is done, may be null
+	private long queuedNanos = -1; // -1 until the packet is sent through the link layer
 
 	/**
 	 * Creates a packet fiven a byte[] frame
@@ -73,6 +76,52 @@ public class Packet {
 		frame[dataLength + 9] = (byte) (crc & 0xFF);
 	}
 
+	/**
+	 * Attaches a receipt that is completed when the sender is done with the packet
+	 * 
+	 * @param receipt     CompletableFuture<SendReceipt>
+	 * @param queuedNanos long the link layer clock's nanoTime() when the packet was sent
+	 */
+	public void setReceipt(CompletableFuture<SendReceipt> receipt, long queuedNanos) {
+		this.receipt = receipt;
+		this.queuedNanos = queuedNanos;
+	}
+
+	/**
+	 * gets when the packet was sent through the link layer
+	 * 
+	 * @return queuedNanos long, -1 for a packet the sender made itself
+	 */
+	public long getQueuedNanos() {
+		return queuedNanos;
+	}
+
+	/**
+	 * Completes the receipt, if any
+	 * 
+	 * @param isDelivered boolean
+	 * @param retries     int
+	 * @param doneNanos   long when the sender was done, on the clock queuedNanos came from
+	 */
+	public void complete(boolean isDelivered, int retries, long doneNanos) {
+		if (receipt != null) {
+			receipt.complete(new SendReceipt(getDest(), isDelivered, isDelivered ? 4 : 5, retries,
+					doneNanos - queuedNanos));
+		}
+	}
+
+	/**
+	 * Fails the receipt, if any and not already completed, because the link layer
+	 * closed before the packet was done
+	 * 
+	 * @param doneNanos long now, on the clock queuedNanos came from
+	 */
+	public void discard(long doneNanos) {
+		if (receipt != null) {
+			receipt.complete(new SendReceipt(getDest(), false, 12, 0, doneNanos - queuedNanos));
+		}
+	}
+
 	/**
 	 * Gets the destination of the packet as a short
 	 * 
@@ -153,6 +202,22 @@ public class Packet {
 		return sequenceNumber;
 	}
 
+	/**
+	 * sets the sequence number of the packet
+	 * 
+	 * @param sequenceNumber int, only the low 12 bits are used
+	 */
+	public void setSequenceNumber(int sequenceNumber) {
+		frame[0] = (byte) ((frame[0] & 0xF0) | ((sequenceNumber >> 8) & 0x0F));
+		frame[1] = (byte) sequenceNumber;
+		// recalculate crc
+		int crc = calculateCRC(frame, 0, dataLength + 6);
+		frame[dataLength + 6] = (byte) ((crc >> 24) & 0xFF);
+		frame[dataLength + 7] = (byte) ((crc >> 16) & 0xFF);
+		frame[dataLength + 8] = (byte) ((crc >> 8) & 0xFF);
+		frame[dataLength + 9] = (byte) (crc & 0xFF);
+	}
+
 	/**
 	 * sets the retry flag for this packet
 	 * 
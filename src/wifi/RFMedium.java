@@ -0,0 +1,48 @@
+package wifi;
+
+import rf.RF;
+
+/**
+ * The RF layer as a {@link Medium}
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class RFMedium implements Medium {
+
+	private RF theRF;
+
+	/**
+	 * Wraps an RF layer
+	 *
+	 * @param theRF RF
+	 */
+	public RFMedium(RF theRF) {
+		this.theRF = theRF;
+	}
+
+	@Override
+	public long transmit(byte[] frame) {
+		theRF.transmit(frame);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Blocks until a frame arrives
+	 *
+	 * @return frame byte[]
+	 */
+	public byte[] receive() {
+		return theRF.receive();
+	}
+
+	@Override
+	public boolean inUse() {
+		return theRF.inUse();
+	}
+
+	@Override
+	public long clock() {
+		return theRF.clock();
+	}
+}
@@ -0,0 +1,81 @@
+package wifi;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands frames from a station's incoming queue to a {@link ReceiveListener} on its
+ * executor. The receiver calls {@link #frameReady()} after each accepted frame;
+ * only one dispatch task is scheduled at a time, and it drains everything that
+ * arrived meanwhile into a single batch. A listener that throws loses that
+ * batch but still gets the ones after it.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class ReceiveDispatcher implements Runnable {
+
+	private ReceiveListener listener;
+	private Executor executor;
+	private Station station;
+	private LatencyProbe probe;
+	private AtomicBoolean scheduled;
+
+	/**
+	 * Creates a dispatcher
+	 * 
+	 * @param listener ReceiveListener
+	 * @param executor Executor the listener is called on
+	 * @param station  Station whose frames are dispatched
+	 * @param probe    LatencyProbe that times frames handed to the listener
+	 */
+	public ReceiveDispatcher(ReceiveListener listener, Executor executor, Station station, LatencyProbe probe) {
+		this.listener = listener;
+		this.executor = executor;
+		this.station = station;
+		this.probe = probe;
+		this.scheduled = new AtomicBoolean(false);
+	}
+
+	/**
+	 * Schedules a dispatch unless one is already pending
+	 */
+	public void frameReady() {
+		if (scheduled.compareAndSet(false, true)) {
+			executor.execute(this);
+		}
+	}
+
+	/**
+	 * Drains the incoming queue and passes the frames to the listener until the
+	 * queue stays empty
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			ArrayList<Transmission> batch = new ArrayList<Transmission>();
+			Packet packet;
+			while ((packet = station.poll()) != null) {
+				byte[] data = probe.received(packet.getSource(), packet.getData());
+				batch.add(new Transmission(packet.getSource(), packet.getDest(), data));
+			}
+			if (batch.isEmpty()) {
+				scheduled.set(false);
+				// a frame may have arrived after the drain but before the flag was cleared
+				if (station.getIncoming().isEmpty() || !scheduled.compareAndSet(false, true)) {
+					return;
+				}
+			}
+			else {
+				try {
+					listener.framesReceived(batch);
+				}
+				catch (RuntimeException e) {
+					// keep dispatching, returning here would leave scheduled set for good
+					System.err.println("Receive listener failed: " + e);
+				}
+			}
+		}
+	}
+}
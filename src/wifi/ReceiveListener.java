@@ -0,0 +1,22 @@
+package wifi;
+
+import java.util.List;
+
+/**
+ * Receives frames from the link layer as soon as they are accepted, instead of
+ * the application blocking in {@link LinkLayer#recv(Transmission)}. Register one
+ * with {@link LinkLayer#setReceiveListener(ReceiveListener, java.util.concurrent.Executor)}.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public interface ReceiveListener {
+
+	/**
+	 * Called on the listener's executor with every frame that was waiting, in the
+	 * order they were accepted. Calls for one link layer never overlap.
+	 * 
+	 * @param batch List<Transmission> with at least one frame
+	 */
+	void framesReceived(List<Transmission> batch);
+}
@@ -2,56 +2,158 @@ package wifi;
 
 import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
-
-import rf.RF;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * A thread class that looks for incoming packets on the RF layer and handles
  * them accordingly. Sends ACKS for those received packets.
+ * <p>
+ * Receiving is split in two stages so a slow frame never holds up the RF
+ * layer. The receiver thread only pulls raw frames and stamps them, and puts
+ * them on a {@link FrameRing}. The validation stage, a second thread, takes
+ * them off in batches to check, filter and deliver. ACK frames for our sender
+ * are small and time critical, so the pull thread handles them itself.
  * 
  * @version 23.12.6
  * @author Matthew Zou, David Lybeck
  */
 public class Receiver implements Runnable {
 
-	private static long beaconReceiveOffset = 0;
-	private RF theRF;
-	private ArrayBlockingQueue<Packet> incoming;
-	private ArrayBlockingQueue<Integer> acks;
+	// causes counted in skipped, overheard counts frames delivered in promiscuous mode
+	private static final int foreign = 0;
+	private static final int badCrc = 1;
+	private static final int runt = 2;
+	private static final int queueFull = 3;
+	private static final int duplicate = 4;
+	private static final int overheard = 5;
+	private static final int ringFull = 6;
+
+	private static final int ringSize = 256;
+	private static final int batchSize = 16;
+
+	private Medium medium;
+	private RFMedium rf; // what the receive thread pulls frames from, null in a simulation
+	private MacClock clock;
+	private StationTable stations;
+	private ArrayBlockingQueue<Packet> acks;
 	private AtomicIntegerArray cmds;
 	private PrintWriter output;
+	private EventChannel events;
 	private short ourMAC;
-	private AtomicLong localOffset;
+	private ClockSync clockSync;
+	private GroupMembership groups;
+	private FlowControl flow;
+	private AckResponder ackResponder;
 	private AtomicInteger status;
-	private HashMap<Short, Integer> incomingSeqNums; // contains most recently used seqNum for ever destination
+	private AtomicLongArray skipped; // frames skipped or overheard, indexed by cause
+	private FrameRing ring; // pulled frames waiting for validation
+	private LatencyHistogram queueWait; // us from pulled to validation starting
+	private LatencyHistogram validation; // us to check and deliver a frame
+	private LatencyHistogram batches; // frames per batch
+	private AtomicLong fastAcks; // ACKs handled on the pull thread
+	private volatile boolean running;
 
 	/**
 	 * Creates a receiver
 	 * 
-	 * @param theRF       RF
-	 * @param incoming    ArrayBlockingQueue<Packet>
-	 * @param acks        ArrayBlockingQueue<Integer>
+	 * @param medium      Medium
+	 * @param rf          RFMedium to pull frames from, null in a simulation
+	 * @param clock       MacClock
+	 * @param stations    StationTable the addresses we receive for
+	 * @param acks        ArrayBlockingQueue<Packet>
 	 * @param cmds        AtomicIntegerArray cmds
 	 * @param output      PrintWriter
+	 * @param events      EventChannel, may be null
 	 * @param ourMAC      short
-	 * @param localOffset AtomicLong
+	 * @param clockSync   ClockSync
+	 * @param groups      GroupMembership multicast groups we have joined
+	 * @param flow        FlowControl where buffer space advertised in ACKs goes
 	 * @param status      AtomicInteger
+	 * @param ackResponder AckResponder
 	 */
-	public Receiver(RF theRF, ArrayBlockingQueue<Packet> incoming, ArrayBlockingQueue<Integer> acks,
-			AtomicIntegerArray cmds, PrintWriter output, short ourMAC, AtomicLong localOffset, AtomicInteger status) {
-		this.theRF = theRF;
-		this.incoming = incoming;
+	public Receiver(Medium medium, RFMedium rf, MacClock clock, StationTable stations, ArrayBlockingQueue<Packet> acks,
+			AtomicIntegerArray cmds, PrintWriter output, EventChannel events, short ourMAC, ClockSync clockSync, GroupMembership groups, FlowControl flow, AtomicInteger status,
+			AckResponder ackResponder) {
+		this.medium = medium;
+		this.rf = rf;
+		this.clock = clock;
+		this.stations = stations;
 		this.acks = acks;
 		this.cmds = cmds;
 		this.output = output;
+		this.events = events;
 		this.ourMAC = ourMAC;
-		this.localOffset = localOffset;
+		this.clockSync = clockSync;
+		this.groups = groups;
+		this.flow = flow;
 		this.status = status;
-		this.incomingSeqNums = new HashMap<Short, Integer>();
+		this.skipped = new AtomicLongArray(7);
+		this.ring = new FrameRing(ringSize);
+		this.queueWait = new LatencyHistogram();
+		this.validation = new LatencyHistogram();
+		this.batches = new LatencyHistogram();
+		this.fastAcks = new AtomicLong();
+		this.running = true;
+		this.ackResponder = ackResponder;
+	}
+
+	/**
+	 * Queues a frame for the application of a station
+	 * 
+	 * @param station Station
+	 * @param packet  Packet
+	 * @param kind    String what to call it in debug output
+	 */
+	private void deliver(Station station, Packet packet, String kind) {
+		if (!station.offer(packet, cmds.get(9))) {
+			skipped.incrementAndGet(queueFull);
+			if (cmds.get(0) == -1) {
+				output.println("	Receiver: Incoming Queue full, dropped " + kind + ": " + packet);
+			}
+			return;
+		}
+		station.frameQueued();
+		if (events != null) {
+			events.publish(LinkEvent.message(packet.getSource(), packet.getData()));
+		}
+		if (cmds.get(0) == -1) {
+			output.println("	Receiver: Received " + kind + " for " + station.getMAC() + ": " + packet);
+		}
+	}
+
+	/**
+	 * Delivers frames held in the reorder buffers whose gap has timed out, or all
+	 * of them once reordering is turned off. Called periodically by the link layer
+	 */
+	public void releaseExpired() {
+		for (Station station : stations.all()) {
+			ReorderBuffer reorder = station.getReorder();
+			synchronized (reorder) {
+				List<Packet> ready = cmds.get(6) > 0 ? reorder.expire(clock.nanoTime(), cmds.get(7))
+						: reorder.flush();
+				for (Packet packet : ready) {
+					deliver(station, packet, "Message");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Summarizes the reorder buffers
+	 * 
+	 * @return report String
+	 */
+	public String reorderReport() {
+		StringBuilder sb = new StringBuilder();
+		for (Station station : stations.all()) {
+			sb.append(station.getMAC()).append(": ").append(station.getReorder().report());
+		}
+		return sb.toString();
 	}
 
 	/**
@@ -60,128 +162,287 @@ public class Receiver implements Runnable {
 	 * @return
 	 */
 	private long getLocalTime() {
-		return theRF.clock() + localOffset.get();
+		return clockSync.localTime();
 	}
 
 	/**
-	 * starts the reciever
+	 * starts the reciever, which pulls frames off the RF layer for the validation
+	 * stage
 	 */
 	@Override
 	public void run() {
-		while (true) {
-			byte[] frame = theRF.receive();
+		while (running) {
+			byte[] frame = rf.receive();
+			if (!running) {
+				break;
+			}
+			long receivedAt = medium.clock();
+			long receivedNanos = clock.nanoTime();
 			if (cmds.get(0) == -1 || cmds.get(0) == -2) {
-				output.println("	Receiver: Received Packet at: " + theRF.clock());
-			}
-			Packet packet = new Packet(frame);
-			short dest = packet.getDest();
-			boolean isBroadcast = dest == (short) -1;
-
-			// check if packet's destination is for us and checksum
-			if ((packet.getDest() == ourMAC || isBroadcast) && packet.isValid()) {
-				// check if packet is ack
-				if (packet.isAck()) {
-					// add seqNum of the ack to acks queue
-					acks.add(packet.getSequenceNumber());
-					if (cmds.get(0) == -1) {
-						output.println("Receiver: Received Ack: " + packet);
-					}
+				output.println("	Receiver: Received Packet at: " + medium.clock());
+			}
+			// the sender is waiting on ACKs, don't queue them behind data frames
+			if (frame != null && frame.length >= 10 && frame.length <= 12 && ((frame[0] >> 5) & 0x07) == 1) {
+				fastAcks.incrementAndGet();
+				process(frame, receivedAt, receivedNanos);
+			}
+			else if (!ring.put(frame, receivedAt, receivedNanos)) {
+				skipped.incrementAndGet(ringFull);
+				if (cmds.get(0) == -1) {
+					output.println("	Receiver: Validation stage behind, frame dropped");
 				}
-				// check if packet is a beacon
-				else if (isBroadcast && packet.isBeacon()) {
-					long incomingClockTime = 0;
-					for (int i = 0; i < 8; i++) {
-						incomingClockTime |= ((long) (packet.getData()[i] & 0xFF)) << (56 - (8 * i));
+			}
+		}
+	}
+
+	/**
+	 * gets the validation stage, which must be started on its own thread
+	 * 
+	 * @return stage Runnable
+	 */
+	public Runnable getValidationStage() {
+		return new Runnable() {
+			@Override
+			public void run() {
+				byte[][] frames = new byte[batchSize][];
+				long[] receivedAt = new long[batchSize];
+				long[] receivedNanos = new long[batchSize];
+				while (running) {
+					int n = ring.take(frames, receivedAt, receivedNanos);
+					if (n == 0) {
+						continue;
 					}
-					if (cmds.get(0) == -1 || cmds.get(0) == -2) {
-						output.println("	Receiver: Beacon received with clock time of: " + incomingClockTime);
+					batches.record(n);
+					for (int i = 0; i < n; i++) {
+						long start = System.nanoTime();
+						queueWait.record((start - receivedNanos[i]) / 1000);
+						process(frames[i], receivedAt[i], receivedNanos[i]);
+						validation.record((System.nanoTime() - start) / 1000);
+						frames[i] = null;
 					}
-					incomingClockTime += beaconReceiveOffset;
-					long timeWhenCompared = theRF.clock();
-					if (incomingClockTime > getLocalTime()) {
-						localOffset.set(incomingClockTime - theRF.clock());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Tells both stages to stop, interrupt their threads to wake them. The pull
+	 * thread can't be woken while the RF layer is blocked in receive(), it stops
+	 * when the next frame arrives
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Summarizes how long frames spend in each receive stage
+	 * 
+	 * @param reset boolean start over afterwards
+	 * @return report String
+	 */
+	public String pipelineReport(boolean reset) {
+		String report = "Receive pipeline: " + ring.size() + " of " + ringSize + " frames waiting, "
+				+ skipped.get(ringFull) + " dropped with the ring full, " + fastAcks.get()
+				+ " ACKs handled on the pull thread\n	Queue wait us: " + queueWait + "\n	Validation us: "
+				+ validation + "\n	Batch size: " + batches + "\n";
+		if (reset) {
+			queueWait.reset();
+			validation.reset();
+			batches.reset();
+		}
+		return report;
+	}
+
+	/**
+	 * Handles one frame from the medium, called by the validation stage or, in a
+	 * simulation, as the frame arrives. The destination is read straight from
+	 * the header first, so frames for other stations are dropped without building
+	 * a Packet or checking the CRC, unless we are in promiscuous mode
+	 * 
+	 * @param frame         byte[]
+	 * @param receivedAt    long medium clock when the frame arrived
+	 * @param receivedNanos long clock nanoTime() when the frame arrived
+	 */
+	public void process(byte[] frame, long receivedAt, long receivedNanos) {
+		if (frame == null || frame.length < 10) {
+			skipped.incrementAndGet(runt);
+			if (cmds.get(0) == -1) {
+				output.println("	Receiver: Frame too short");
+			}
+			return;
+		}
+		short dest = (short) (((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF));
+		// joined groups are handled like broadcasts, one bit lookup decides
+		boolean isBroadcast = dest == (short) -1 || groups.contains(dest);
+		Station station = isBroadcast ? null : stations.get(dest);
+		if (station == null && !isBroadcast) {
+			if (cmds.get(8) != 0) {
+				promiscuous(new Packet(frame));
+			}
+			else {
+				skipped.incrementAndGet(foreign);
+				if (cmds.get(0) == -1) {
+					output.println("	Receiver: Wrong Destination");
+				}
+			}
+			return;
+		}
+		Packet packet = new Packet(frame);
+
+		// the destination is ours, check the checksum
+		if (packet.isValid()) {
+			// check if packet is ack
+			if (packet.isAck()) {
+				// the sender matches the ack on source, destination and seqNum, since
+				// every address we host numbers its frames on its own
+				acks.add(packet);
+				// ACKs from stations with flow control carry their free buffer space
+				if (packet.getDataLength() >= 2) {
+					byte[] window = packet.getData();
+					flow.advertised(packet.getSource(), ((window[0] & 0xFF) << 8) | (window[1] & 0xFF), medium.clock());
+				}
+				if (cmds.get(0) == -1) {
+					output.println("Receiver: Received Ack: " + packet);
+				}
+			}
+			// check if packet is a beacon
+			else if (dest == (short) -1 && packet.isBeacon()) {
+				long incomingClockTime = 0;
+				for (int i = 0; i < 8; i++) {
+					incomingClockTime |= ((long) (packet.getData()[i] & 0xFF)) << (56 - (8 * i));
+				}
+				if (cmds.get(0) == -1 || cmds.get(0) == -2) {
+					output.println("	Receiver: Beacon received with clock time of: " + incomingClockTime);
+				}
+				long timeWhenCompared = medium.clock();
+				long error = clockSync.beaconReceived(packet.getSource(), incomingClockTime, receivedAt);
+				if (cmds.get(0) == -1 || cmds.get(0) == -2) {
+					output.println("	Receiver: Processed beacon at time: " + timeWhenCompared
+							+ "\n	Sync error : " + error);
+					output.println("	Receiver: Local Time: " + getLocalTime());
+				}
+			}
+			// broadcasts and group frames go to every station we host, unACKed
+			else if (isBroadcast) {
+				for (Station each : stations.all()) {
+					if (each.fits(packet, cmds.get(9))) {
+						deliver(each, packet, "Broadcast");
 					}
-					if (cmds.get(0) == -1 || cmds.get(0) == -2) {
-						output.println("	Receiver: Processed beacon at time: " + timeWhenCompared
-								+ "\n	Local offset : " + localOffset.get());
-						output.println("	Receiver: Local Time: " + getLocalTime());
+					else {
+						queueFull(each);
 					}
 				}
-				// check if incoming queue is full
-				else if (incoming.size() <= 4) {
-					// if its a broadcast add to incoming queue
-					if (isBroadcast) {
-						incoming.add(packet);
-						if (cmds.get(0) == -1) {
-							output.println("	Receiver: Received Broadcast: " + packet);
+			}
+			// check if the incoming buffer has room, a frame that doesn't fit is not ACKed
+			else if (station.fits(packet, cmds.get(9))) {
+				// put it back in order with the reorder buffer
+				if (cmds.get(6) > 0) {
+					ReorderBuffer reorder = station.getReorder();
+					synchronized (reorder) {
+						for (Packet ready : reorder.accept(packet, receivedNanos, cmds.get(6))) {
+							deliver(station, ready, "Message");
 						}
 					}
-					// not a broadcast
+				}
+				else {
+					HashMap<Short, Integer> incomingSeqNums = station.getIncomingSeqNums();
+					short source = packet.getSource();
+					int recvSeq = packet.getSequenceNumber();
+					int currSeq = -1;
+					if (incomingSeqNums.containsKey(source)) {
+						currSeq = incomingSeqNums.get(source);
+					}
+					// Packet is not duplicate queue it
+					if (recvSeq == currSeq) {
+						skipped.incrementAndGet(duplicate);
+					}
 					else {
-						int recvSeq = packet.getSequenceNumber();
-						int currSeq = -1;
-						if (incomingSeqNums.containsKey(dest)) {
-							currSeq = incomingSeqNums.get(dest);
-						}
-						// Packet is not duplicate queue it
-						if (recvSeq != currSeq) {
-							incoming.add(packet);
-							if (cmds.get(0) == -1) {
-								output.println("	Receiver: Received Message: " + packet);
-							}
-							// If a seqNum is skipped print err
-							if (recvSeq != currSeq + 1){
-								output.println("Out of Order Sequence Number");
-							}
-						}
-						
-						// place new seqNum into hashmap of all received seqNums
-						incomingSeqNums.put(dest, recvSeq);
-						// if packet is not a broadcast, wait SIFS and send an ack;
-						try {
-							Thread.sleep(RF.aSIFSTime);
-						}
-						catch (InterruptedException e) {
-							status.set(2);
-							System.err.println("	Error while putting thread to sleep");
-						}
-						if (!theRF.inUse()) {
-							byte[] emptyArray = new byte[0];
-							Packet ack = new Packet((short) 1, (short) 0, packet.getSequenceNumber(), ourMAC,
-									packet.getSource(), emptyArray, 0);
-							theRF.transmit(ack.getFrame());
-							if (cmds.get(0) == -1) {
-								output.println("	Receiver: Ack sent");
-							}
-						}
-						else {
-							if (cmds.get(0) == -1) {
-								output.println("	Receiver: Couldn't send Ack!!");
-							}
+						deliver(station, packet, "Message");
+						// If a seqNum is skipped print err
+						if (recvSeq != ((currSeq + 1) & 0xFFF)) {
+							output.println("Out of Order Sequence Number");
 						}
 					}
 
+					// place new seqNum into hashmap of all received seqNums
+					incomingSeqNums.put(source, recvSeq);
 				}
-				else {
-					if (cmds.get(0) == -1) {
-						output.println("	Receiver: Incoming Queue size limit reached");
-					}
-				}
+				// packet is not a broadcast, have an ack sent from its station SIFS after it arrived
+				ackResponder.schedule(station.getMAC(), packet.getSource(), packet.getSequenceNumber(),
+						receivedNanos, station.freeBytes(cmds.get(9)));
 			}
 			else {
-				if(!packet.isValid()) {
-					if (cmds.get(0) == -1) {
-						output.println("	Receiver: Checksum failed");
-					}
-				}
-				if(!(packet.getDest() == ourMAC || isBroadcast)) {
-					if (cmds.get(0) == -1) {
-						output.println("	Receiver: Wrong Destination");
-					}
-				}
+				queueFull(station);
 			}
+		}
+		else {
+			skipped.incrementAndGet(badCrc);
+			if (cmds.get(0) == -1) {
+				output.println("	Receiver: Checksum failed");
+			}
+		}
+	}
+
+	/**
+	 * Handles a frame addressed to another station while in promiscuous mode.
+	 * Valid data frames are delivered to the application but never ACKed
+	 * 
+	 * @param packet Packet
+	 */
+	private void promiscuous(Packet packet) {
+		if (!packet.isValid()) {
+			skipped.incrementAndGet(badCrc);
+			if (cmds.get(0) == -1) {
+				output.println("	Receiver: Checksum failed");
+			}
+		}
+		else if (packet.isAck() || packet.isBeacon()) {
+			skipped.incrementAndGet(foreign);
+		}
+		else {
+			Station station = stations.get(ourMAC);
+			if (station == null || !station.fits(packet, cmds.get(9))) {
+				skipped.incrementAndGet(queueFull);
+			}
+			else {
+				skipped.incrementAndGet(overheard);
+				deliver(station, packet, "Overheard Message");
+			}
+		}
+	}
 
+	/**
+	 * Counts a frame dropped because a station's incoming buffer is full
+	 * 
+	 * @param station Station
+	 */
+	private void queueFull(Station station) {
+		skipped.incrementAndGet(queueFull);
+		if (cmds.get(0) == -1) {
+			output.println("	Receiver: Incoming buffer limit reached for " + station.getMAC());
 		}
 	}
 
+	/**
+	 * gets the number of frames received again after they were already accepted,
+	 * which are retransmissions that weren't needed or whose ACK was lost
+	 * 
+	 * @return duplicates long
+	 */
+	public long getDuplicates() {
+		return skipped.get(duplicate);
+	}
+
+	/**
+	 * Summarizes what the receiver did not deliver, by cause
+	 * 
+	 * @return report String
+	 */
+	public String skippedReport() {
+		return "Receiver skipped: " + skipped.get(foreign) + " for other stations, " + skipped.get(badCrc)
+				+ " bad checksums, " + skipped.get(runt) + " too short, " + skipped.get(queueFull) + " queue full, "
+				+ skipped.get(duplicate) + " duplicates, " + skipped.get(ringFull)
+				+ " with the validation stage behind; " + skipped.get(overheard) + " overheard in promiscuous mode\n";
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package wifi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Puts the frames from each source back into sequence number order. Frames
+ * that arrive early are held until the missing ones show up. A gap is given up
+ * on once more than maxFrames frames are held for a source, or once the oldest
+ * held frame has waited longer than the gap timeout. Sequence numbers are 12
+ * bits and wrap around, so "ahead" means less than half the sequence space
+ * ahead.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class ReorderBuffer {
+
+	private static final int seqSpace = 4096;
+	private static final int duplicateWindow = 64; // frames further behind than this mean the source restarted
+
+	/**
+	 * Reordering state for one source
+	 */
+	private static class Source {
+		int expected;
+		HashMap<Integer, Packet> held = new HashMap<Integer, Packet>();
+		HashMap<Integer, Long> heldSince = new HashMap<Integer, Long>();
+	}
+
+	private HashMap<Short, Source> sources;
+	private long duplicates;
+	private long skipped;
+
+	/**
+	 * Creates an empty reorder buffer
+	 */
+	public ReorderBuffer() {
+		this.sources = new HashMap<Short, Source>();
+	}
+
+	/**
+	 * Accepts a frame and returns the frames that can now be delivered, in order
+	 * 
+	 * @param packet    Packet
+	 * @param nowNanos  long
+	 * @param maxFrames int most frames to hold per source
+	 * @return frames to deliver List<Packet>, possibly empty
+	 */
+	public synchronized List<Packet> accept(Packet packet, long nowNanos, int maxFrames) {
+		ArrayList<Packet> ready = new ArrayList<Packet>();
+		short from = packet.getSource();
+		int seq = packet.getSequenceNumber();
+		Source source = sources.get(from);
+		if (source == null) {
+			source = new Source();
+			source.expected = seq;
+			sources.put(from, source);
+		}
+		int ahead = distance(source.expected, seq);
+		if (ahead >= seqSpace / 2) {
+			if (seqSpace - ahead <= duplicateWindow) {
+				duplicates++;
+				return ready;
+			}
+			// too far behind to be a late copy, the source must have started over
+			releaseAll(source, ready);
+			source.expected = seq;
+			ahead = 0;
+		}
+		if (ahead == 0) {
+			ready.add(packet);
+			source.expected = (seq + 1) % seqSpace;
+			releaseInOrder(source, ready);
+		}
+		else if (source.held.containsKey(seq)) {
+			duplicates++;
+		}
+		else {
+			source.held.put(seq, packet);
+			source.heldSince.put(seq, nowNanos);
+			while (source.held.size() > maxFrames) {
+				skipGap(source, ready);
+			}
+		}
+		return ready;
+	}
+
+	/**
+	 * Gives up on gaps whose oldest held frame has waited longer than the timeout
+	 * 
+	 * @param nowNanos      long
+	 * @param timeoutMillis long
+	 * @return frames to deliver List<Packet>, possibly empty
+	 */
+	public synchronized List<Packet> expire(long nowNanos, long timeoutMillis) {
+		ArrayList<Packet> ready = new ArrayList<Packet>();
+		long timeoutNanos = timeoutMillis * 1000000L;
+		for (Source source : sources.values()) {
+			while (!source.held.isEmpty() && nowNanos - oldest(source) > timeoutNanos) {
+				skipGap(source, ready);
+			}
+		}
+		return ready;
+	}
+
+	/**
+	 * Releases every held frame in order, used when reordering is turned off
+	 * 
+	 * @return frames to deliver List<Packet>, possibly empty
+	 */
+	public synchronized List<Packet> flush() {
+		ArrayList<Packet> ready = new ArrayList<Packet>();
+		for (Source source : sources.values()) {
+			releaseAll(source, ready);
+		}
+		sources.clear();
+		return ready;
+	}
+
+	/**
+	 * Summarizes the buffer for the command interface
+	 * 
+	 * @return report String
+	 */
+	public synchronized String report() {
+		int held = 0;
+		for (Source source : sources.values()) {
+			held += source.held.size();
+		}
+		return "Reorder buffer: " + sources.size() + " sources, " + held + " frames held, " + duplicates
+				+ " duplicates dropped, " + skipped + " gaps skipped\n";
+	}
+
+	/**
+	 * Skips to the nearest held frame and releases everything in order from there
+	 */
+	private void skipGap(Source source, List<Packet> ready) {
+		int nearest = -1;
+		for (int seq : source.held.keySet()) {
+			if (nearest < 0 || distance(source.expected, seq) < distance(source.expected, nearest)) {
+				nearest = seq;
+			}
+		}
+		skipped++;
+		source.expected = nearest;
+		releaseInOrder(source, ready);
+	}
+
+	/**
+	 * Releases held frames for as long as the expected one is there
+	 */
+	private void releaseInOrder(Source source, List<Packet> ready) {
+		Packet next;
+		while ((next = source.held.remove(source.expected)) != null) {
+			source.heldSince.remove(source.expected);
+			ready.add(next);
+			source.expected = (source.expected + 1) % seqSpace;
+		}
+	}
+
+	/**
+	 * Releases all held frames, skipping every gap
+	 */
+	private void releaseAll(Source source, List<Packet> ready) {
+		while (!source.held.isEmpty()) {
+			skipGap(source, ready);
+		}
+	}
+
+	/**
+	 * gets when the longest waiting held frame arrived
+	 */
+	private long oldest(Source source) {
+		long oldest = Long.MAX_VALUE;
+		for (long since : source.heldSince.values()) {
+			oldest = Math.min(oldest, since);
+		}
+		return oldest;
+	}
+
+	/**
+	 * gets how far seq is ahead of from, modulo the sequence space
+	 */
+	private static int distance(int from, int seq) {
+		return (seq - from + seqSpace) % seqSpace;
+	}
+}
@@ -0,0 +1,188 @@
+package wifi;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Compares the ACK timeout derived from RTT estimates with the old fixed one.
+ * One station sends frames to another on a simulated medium, one at a time,
+ * once with the timeout held at the initial value by setting the floor and the
+ * ceiling to it, and once with the floor and ceiling left alone. That is done
+ * on a channel that loses frames, where a shorter timeout recovers sooner, and
+ * with stations that take a random time to process frames, where a timeout
+ * shorter than the slowest ACKs retransmits frames that weren't lost. Without
+ * losses every duplicate the destination receives is such a spurious
+ * retransmission. Everything runs on the simulation's virtual clock with a
+ * fixed seed, so the table is the same on every machine.
+ *
+ * <pre>
+ * java wifi.RttBenchmark [options]
+ *   -time T   simulated seconds per run (default 3600)
+ *   -size S   payload size in bytes (default 20)
+ *   -loss L   chance of losing a frame on the lossy channel (default 0.1)
+ *   -delay D  most ms a slow station takes to process a frame (default 2000)
+ *   -seed N   seed for the simulation (default 1)
+ * </pre>
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class RttBenchmark {
+
+	private byte[] payload;
+	private long seconds;
+	private long seed;
+
+	/**
+	 * Creates a benchmark
+	 *
+	 * @param size    int payload size
+	 * @param seconds long simulated seconds per run
+	 * @param seed    long
+	 */
+	public RttBenchmark(int size, long seconds, long seed) {
+		this.payload = new byte[size];
+		this.seconds = seconds;
+		this.seed = seed;
+	}
+
+	/**
+	 * Runs one simulation and prints its row
+	 *
+	 * @param scenario String name of the channel
+	 * @param loss     double chance of losing a frame
+	 * @param delay    long most ms a station takes to process a frame
+	 * @param fixed    boolean hold the timeout at its initial value
+	 */
+	public void run(String scenario, double loss, long delay, boolean fixed) {
+		final SimScheduler scheduler = new SimScheduler(seed);
+		SimMedium medium = new SimMedium(scheduler);
+		medium.setLoss(loss);
+		medium.setDelay(0, delay * 1000000L);
+		// the link layer's output is not interesting here
+		PrintWriter quiet = new PrintWriter(new OutputStream() {
+			public void write(int b) {
+			}
+		});
+		final LinkLayer sender = new LinkLayer((short) 1, quiet, medium);
+		LinkLayer receiver = new LinkLayer((short) 2, quiet, medium);
+		// beacons would collide with the frames and their ACKs
+		sender.command(3, -1);
+		receiver.command(3, -1);
+		if (fixed) {
+			int timeout = new Tunables().getInitialAckTimeout();
+			sender.command(7, timeout);
+			sender.command(8, timeout);
+		}
+		// the destination's application takes every frame right away
+		receiver.setReceiveListener(new ReceiveListener() {
+			public void framesReceived(List<Transmission> batch) {
+			}
+		}, scheduler);
+		final long[] done = new long[3]; // frames delivered, failed and timeouts
+		final LatencyHistogram service = new LatencyHistogram(); // ms from send to ACK
+		final LatencyHistogram recovery = new LatencyHistogram(); // the same for frames that were retried
+		// send the next frame when one is done, so the time is the frame's alone
+		final Consumer<SendReceipt> next = new Consumer<SendReceipt>() {
+			public void accept(SendReceipt receipt) {
+				long millis = receipt.getLatencyNanos() / 1000000;
+				if (receipt.isDelivered()) {
+					done[0]++;
+					done[2] += receipt.getRetries();
+					service.record(millis);
+					if (receipt.getRetries() > 0) {
+						recovery.record(millis);
+					}
+				}
+				else {
+					done[1]++;
+					// the last transmission timed out too
+					done[2] += receipt.getRetries() + 1;
+				}
+				send(sender, this);
+			}
+		};
+		scheduler.schedule(0, new Runnable() {
+			public void run() {
+				send(sender, next);
+			}
+		});
+		scheduler.run(seconds * 1000000000L);
+		long delivered = done[0];
+		long failed = done[1];
+		long timeouts = done[2];
+		long duplicates = receiver.getDuplicates();
+		sender.close();
+		receiver.close();
+
+		System.out.printf("%-9s %-8s %9d %7d %9d %10d %9d %9d %10d %10d%n", scenario, fixed ? "fixed" : "adaptive",
+				delivered, failed, timeouts, duplicates, service.percentile(50), service.percentile(99),
+				recovery.percentile(50), recovery.percentile(99));
+	}
+
+	/**
+	 * Queues a frame for station 2 and calls back when the sender is done with
+	 * it. Nothing is called back for a frame that was refused, which only happens
+	 * once the link layer is closed
+	 */
+	private void send(LinkLayer link, Consumer<SendReceipt> then) {
+		CompletableFuture<SendReceipt> receipt = link.sendAsync((short) 2, payload, payload.length);
+		if (!receipt.isDone()) {
+			receipt.thenAccept(then);
+		}
+	}
+
+	/**
+	 * Runs the benchmark, see the class documentation for options
+	 *
+	 * @param args String[]
+	 */
+	public static void main(String[] args) {
+		long seconds = 3600;
+		int size = 20;
+		double loss = 0.1;
+		long delay = 2000;
+		long seed = 1;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-time")) {
+					seconds = Math.max(1, Long.parseLong(args[++i]));
+				}
+				else if (arg.equals("-size")) {
+					size = Integer.parseInt(args[++i]);
+				}
+				else if (arg.equals("-loss")) {
+					loss = Double.parseDouble(args[++i]);
+				}
+				else if (arg.equals("-delay")) {
+					delay = Math.max(0, Long.parseLong(args[++i]));
+				}
+				else if (arg.equals("-seed")) {
+					seed = Long.parseLong(args[++i]);
+				}
+				else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			System.err.println("Bad arguments: " + e.getMessage());
+			System.err.println("See the RttBenchmark class documentation for usage.");
+			System.exit(1);
+		}
+
+		System.out.println("RttBenchmark: " + size + " byte payloads, " + seconds + " simulated s per run, seed " + seed
+				+ ", lossy loses " + loss + " of frames, slow stations take up to " + delay + " ms, times in ms");
+		System.out.printf("%-9s %-8s %9s %7s %9s %10s %9s %9s %10s %10s%n", "channel", "timeout", "delivered",
+				"failed", "timeouts", "duplicates", "ACK p50", "ACK p99", "retry p50", "retry p99");
+		RttBenchmark benchmark = new RttBenchmark(size, seconds, seed);
+		benchmark.run("lossy", loss, 0, true);
+		benchmark.run("lossy", loss, 0, false);
+		benchmark.run("slow", 0, delay, true);
+		benchmark.run("slow", 0, delay, false);
+	}
+}
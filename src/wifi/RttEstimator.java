@@ -0,0 +1,114 @@
+package wifi;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import rf.RF;
+
+/**
+ * Estimates the round-trip time to each destination from the time ACKs take to
+ * arrive, and derives the ACK timeout from it the way TCP does (Jacobson/Karels):
+ * a smoothed RTT plus four times its mean deviation, but at least a slot time
+ * more, doubled for every retry. Without that margin a steady RTT drives the
+ * deviation to 0 and ACKs that arrive right on time race the timeout.
+ * Only the most recently used destinations are remembered so the table stays
+ * small no matter how many stations we talk to.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class RttEstimator {
+
+	private static final int maxDestinations = 128;
+	private static final int margin = RF.aSlotTime; // least time allowed over the smoothed RTT
+
+	/**
+	 * RTT state for one destination, in milliseconds
+	 */
+	private static class Estimate {
+		double srtt;
+		double rttvar;
+		long samples;
+	}
+
+	private LinkedHashMap<Short, Estimate> estimates;
+
+	/**
+	 * Creates an estimator with no samples
+	 */
+	public RttEstimator() {
+		// access ordered so the eldest entry is the least recently used
+		this.estimates = new LinkedHashMap<Short, Estimate>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Short, Estimate> eldest) {
+				return size() > maxDestinations;
+			}
+		};
+	}
+
+	/**
+	 * Adds an RTT sample. Only frames that were not retransmitted should be
+	 * sampled, since an ACK can't tell us which transmission it answers
+	 * 
+	 * @param dest short
+	 * @param rtt  long milliseconds from the end of the transmission to the ACK
+	 */
+	public synchronized void ackReceived(short dest, long rtt) {
+		Estimate estimate = estimates.get(dest);
+		if (estimate == null) {
+			estimate = new Estimate();
+			estimate.srtt = rtt;
+			estimate.rttvar = rtt / 2.0;
+			estimates.put(dest, estimate);
+		}
+		else {
+			estimate.rttvar = 0.75 * estimate.rttvar + 0.25 * Math.abs(estimate.srtt - rtt);
+			estimate.srtt = 0.875 * estimate.srtt + 0.125 * rtt;
+		}
+		estimate.samples++;
+	}
+
+	/**
+	 * gets how long to wait for an ACK from a destination
+	 * 
+	 * @param dest    short
+	 * @param retries int number of times the frame has already timed out
+	 * @param initial int milliseconds to use until we have a sample
+	 * @param floor   int smallest timeout in milliseconds
+	 * @param ceiling int largest timeout in milliseconds
+	 * @return timeout long milliseconds
+	 */
+	public synchronized long timeout(short dest, int retries, int initial, int floor, int ceiling) {
+		Estimate estimate = estimates.get(dest);
+		double rto = estimate == null ? initial : rto(estimate);
+		rto = Math.max(floor, rto) * (1L << Math.min(retries, 16));
+		return (long) Math.max(floor, Math.min(ceiling, rto));
+	}
+
+	/**
+	 * gets the timeout before retries and limits
+	 */
+	private static double rto(Estimate estimate) {
+		return estimate.srtt + Math.max(margin, 4 * estimate.rttvar);
+	}
+
+	/**
+	 * Lists the estimates for the command interface
+	 * 
+	 * @param floor   int smallest timeout in milliseconds
+	 * @param ceiling int largest timeout in milliseconds
+	 * @return report String
+	 */
+	public synchronized String report(int floor, int ceiling) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("ACK timeout floor " + floor + " ms, ceiling " + ceiling + " ms, " + estimates.size()
+				+ " destinations\n");
+		for (Map.Entry<Short, Estimate> entry : estimates.entrySet()) {
+			Estimate estimate = entry.getValue();
+			sb.append(String.format("  %d: srtt %.1f ms, rttvar %.1f ms, timeout %.0f ms, %d samples%n",
+					entry.getKey(), estimate.srtt, estimate.rttvar,
+					Math.max(floor, Math.min(ceiling, rto(estimate))), estimate.samples));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,202 @@
+package wifi;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how {@link LinkLayer#send(short, byte[], int)} holds up when many
+ * threads call it at once. For 1, 2, 4, ... threads up to the number of cores
+ * every thread sends to its own set of destinations as fast as it can. The
+ * medium takes a frame every few seconds, so a drain thread takes frames off
+ * the outgoing queue the way the sender does to keep it from filling. That
+ * way the calls go through admission and queueing instead of being refused
+ * for a full queue, and a thread that is refused anyway yields to the drain.
+ * Each step prints the frames accepted per second in total and per thread,
+ * and how many frames were accepted, refused and drained. On a machine with
+ * fewer cores than threads plus one, the drain thread competes with the
+ * senders.
+ *
+ * <pre>
+ * java wifi.SendBenchmark [options]
+ *   -mac N      our MAC address (default 900)
+ *   -threads N  most threads to try (default the number of cores)
+ *   -time T     seconds per step (default 3)
+ *   -size S     payload size in bytes (default 100)
+ *   -dests N    destinations per thread (default 16)
+ *   -shape R    refuse sends over R bytes/s per destination (default 0, off)
+ * </pre>
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class SendBenchmark {
+
+	private LinkLayer link;
+	private byte[] payload;
+	private int dests;
+
+	/**
+	 * Creates a benchmark
+	 *
+	 * @param link  LinkLayer
+	 * @param size  int payload size
+	 * @param dests int destinations per thread
+	 */
+	public SendBenchmark(LinkLayer link, int size, int dests) {
+		this.link = link;
+		this.payload = new byte[size];
+		this.dests = Math.max(1, dests);
+	}
+
+	/**
+	 * Runs one step
+	 *
+	 * @param threads int
+	 * @param seconds int
+	 */
+	public void run(final int threads, int seconds) throws InterruptedException {
+		final AtomicLong calls = new AtomicLong();
+		final AtomicLong accepted = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong drained = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final long[] stopAt = new long[1];
+		final AtomicBoolean draining = new AtomicBoolean(true);
+		// stands in for the sender, which the medium would hold to a frame every few seconds
+		Thread drain = new Thread(new Runnable() {
+			public void run() {
+				long taken = 0;
+				while (draining.get()) {
+					if (link.takeQueued() != null) {
+						taken++;
+					}
+					else {
+						Thread.yield();
+					}
+				}
+				while (link.takeQueued() != null) {
+					taken++;
+				}
+				drained.set(taken);
+			}
+		}, "drain");
+		drain.start();
+		for (int t = 0; t < threads; t++) {
+			final int base = 1000 + t * dests;
+			new Thread(new Runnable() {
+				public void run() {
+					long myCalls = 0;
+					long myAccepted = 0;
+					try {
+						start.await();
+						int i = 0;
+						while (System.nanoTime() < stopAt[0]) {
+							if (link.send((short) (base + i), payload, payload.length) > 0) {
+								myAccepted++;
+							}
+							else {
+								// the queue is full, let the drain catch up
+								Thread.yield();
+							}
+							myCalls++;
+							i = i + 1 == dests ? 0 : i + 1;
+						}
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					catch (RuntimeException e) {
+						errors.incrementAndGet();
+					}
+					calls.addAndGet(myCalls);
+					accepted.addAndGet(myAccepted);
+					done.countDown();
+				}
+			}, "send-" + t).start();
+		}
+		long began = System.nanoTime();
+		stopAt[0] = began + seconds * 1000000000L;
+		start.countDown();
+		done.await();
+		double elapsed = (System.nanoTime() - began) / 1e9;
+		draining.set(false);
+		drain.join();
+		System.out.printf("%7d %13.0f %13.0f %10d %10d %10d %7d%n", threads, accepted.get() / elapsed,
+				accepted.get() / elapsed / threads, accepted.get(), calls.get() - accepted.get(), drained.get(),
+				errors.get());
+	}
+
+	/**
+	 * Runs the benchmark, see the class documentation for options
+	 *
+	 * @param args String[]
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		short mac = 900;
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int seconds = 3;
+		int size = 100;
+		int dests = 16;
+		int shape = 0;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-mac")) {
+					mac = Short.parseShort(args[++i]);
+				}
+				else if (arg.equals("-threads")) {
+					maxThreads = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if (arg.equals("-time")) {
+					seconds = Math.max(1, Integer.parseInt(args[++i]));
+				}
+				else if (arg.equals("-size")) {
+					size = Integer.parseInt(args[++i]);
+				}
+				else if (arg.equals("-dests")) {
+					dests = Integer.parseInt(args[++i]);
+				}
+				else if (arg.equals("-shape")) {
+					shape = Integer.parseInt(args[++i]);
+				}
+				else {
+					throw new IllegalArgumentException("Unknown option " + arg);
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			System.err.println("Bad arguments: " + e.getMessage());
+			System.err.println("See the SendBenchmark class documentation for usage.");
+			System.exit(1);
+		}
+
+		// the link layer's output is not interesting here
+		PrintWriter quiet = new PrintWriter(new OutputStream() {
+			public void write(int b) {
+			}
+		});
+		LinkLayer link = new LinkLayer(mac, quiet);
+		// the most frames the queue takes, so a drain that falls behind refuses as little as it can
+		link.command(29, Tunables.maxOutgoingLimit);
+		if (shape > 0) {
+			link.command(24, shape);
+			link.command(26, 0);
+		}
+		System.out.println("SendBenchmark on MAC " + mac + ", " + size + " byte payloads, " + dests
+				+ " destinations per thread, " + seconds + " s per step");
+		System.out.printf("%7s %13s %13s %10s %10s %10s %7s%n", "threads", "accepted/s", "per thread", "accepted",
+				"refused", "drained", "errors");
+		SendBenchmark benchmark = new SendBenchmark(link, size, dests);
+		for (int threads = 1;; threads = Math.min(threads * 2, maxThreads)) {
+			benchmark.run(threads, seconds);
+			if (threads == maxThreads) {
+				break;
+			}
+		}
+		System.exit(0);
+	}
+}
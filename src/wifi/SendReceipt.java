@@ -0,0 +1,86 @@
+package wifi;
+
+/**
+ * The outcome of one frame sent with {@link LinkLayer#sendAsync(short, byte[], int)}
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class SendReceipt {
+
+	private short dest;
+	private boolean delivered;
+	private int status;
+	private int retries;
+	private long latencyNanos;
+
+	/**
+	 * Creates a receipt
+	 *
+	 * @param dest         short
+	 * @param delivered    boolean
+	 * @param status       int the status code the frame ended with
+	 * @param retries      int
+	 * @param latencyNanos long from the send call until the sender was done
+	 */
+	public SendReceipt(short dest, boolean delivered, int status, int retries, long latencyNanos) {
+		this.dest = dest;
+		this.delivered = delivered;
+		this.status = status;
+		this.retries = retries;
+		this.latencyNanos = latencyNanos;
+	}
+
+	/**
+	 * gets the destination
+	 *
+	 * @return dest short
+	 */
+	public short getDest() {
+		return dest;
+	}
+
+	/**
+	 * tells whether the frame was ACKed, or sent if it needs no ACK
+	 *
+	 * @return true if delivered
+	 */
+	public boolean isDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * gets the status code the frame ended with: 4 when it was delivered, 5 when
+	 * the retry limit was reached, 12 when the link layer closed first, or the
+	 * code send() refused it with
+	 *
+	 * @return status int
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * gets how many times the frame was retransmitted
+	 *
+	 * @return retries int
+	 */
+	public int getRetries() {
+		return retries;
+	}
+
+	/**
+	 * gets the time from the send call until the sender was done with the frame
+	 *
+	 * @return latency in ns
+	 */
+	public long getLatencyNanos() {
+		return latencyNanos;
+	}
+
+	@Override
+	public String toString() {
+		return (delivered ? "delivered" : "failed") + " to " + dest + " status " + status + " after " + retries
+				+ " retries in " + latencyNanos / 1000 + " us";
+	}
+}
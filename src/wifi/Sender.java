@@ -1,16 +1,27 @@
 package wifi;
 
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import rf.RF;
 
 /**
  * A tread class that takes the packet off the outgoing queue and transmits it
  * to the RF layer. Based off of 802.11 rules
+ * <p>
+ * The state machine is driven by {@link #step()}, which never waits itself but
+ * says what it needs to wait for. On its own thread the sender blocks for that;
+ * in a simulation a {@link SimDriver} schedules the next step on the virtual
+ * clock instead, so both run exactly the same MAC.
  * 
  * @version 23.12.6
  * @author Matthew Zou, David Lybeck
@@ -24,265 +35,565 @@ public class Sender implements Runnable {
 		awaitData, idleWait, busyDIFSWait, idleDIFSWait, awaitAck, slotWait
 	};
 
-	private static int timeoutTime = RF.aSlotTime * 15;
+	/**
+	 * What a step waits for before the next one: nothing, a time, the medium going
+	 * idle, an ACK until a timeout, or a frame to send until the next look
+	 */
+	public enum Wait {
+		none, time, idle, ack, data
+	};
+
+	/**
+	 * The frames held back for one destination that has no buffer room, in the
+	 * order they were queued
+	 */
+	private static class Held {
+		ArrayDeque<Packet> frames = new ArrayDeque<Packet>();
+		long since; // medium ms the first of them started waiting
+	}
+
 	private static int DIFSTime = RF.aSIFSTime + 2 * RF.aSlotTime;
-	private static long beaconSendOffset = 2308; // time to create and send packet
 	private int cwSize;
 	private int count;
 	private int retries;
-	private RF theRF;
+	private Medium medium;
+	private MacClock clock;
+	private Random random;
 	private ArrayBlockingQueue<Packet> outgoing;
-	private ArrayBlockingQueue<Integer> acks;
+	private AtomicInteger outgoingCount; // frames send() has admitted and we haven't taken yet
+	private AtomicReference<Tunables> tunables;
+	private ArrayBlockingQueue<Packet> acks;
 	private AtomicIntegerArray cmds;
 	private PrintWriter output;
+	private EventChannel events;
 	private short ourMAC;
-	private AtomicLong localOffset;
+	private ClockSync clockSync;
 	private AtomicInteger status;
-	private State myState;
+	private volatile State myState;
+	private volatile boolean running;
+	private AirtimeStats airtime;
+	private StateProfile profile;
+	private RttEstimator rtt;
+	private FlowControl flow;
+	private CarrierSense carrier;
+	// the frame in hand and where its state is at between steps
+	private volatile Packet packet;
+	private boolean isBroadcast;
+	private boolean beacon; // the frame in hand is a beacon
+	private long beaconStartTime; // clock ms
+	private int phase; // 0 entering a state, 1 waited in it, 2 transmitting from it
+	private long phaseStart; // clock ns the wait started
+	private long wakeAt; // clock ns the wait ends
+	private long stampedRaw; // medium clock a beacon was stamped
+	private volatile Packet heldAck; // an ACK the thread took while waiting for one
+	// time spent on the current frame, handed to airtime when the frame is done
+	private long difsNanos;
+	private long roundNanos;
+	private long backoffNanos;
+	private long txNanos;
+	private long ackNanos;
+	// held frames by destination, only touched by whoever steps the sender. They
+	// still count in outgoingCount, so send() can't queue without bound behind them
+	private LinkedHashMap<Short, Held> held;
+	private SequenceCounters seqNums; // numbers the frames we take, in the order we take them
 
 	/**
 	 * Constructor for sender
 	 * 
-	 * @param theRF       RF
+	 * @param medium      Medium
+	 * @param clock       MacClock
+	 * @param random      Random for the backoff
 	 * @param outgoing    ArrayBlockingQueue<Packet>
-	 * @param acks        ArrayBlockingQueue<Integer>
+	 * @param outgoingCount AtomicInteger frames admitted to outgoing
+	 * @param tunables    AtomicReference<Tunables>
+	 * @param acks        ArrayBlockingQueue<Packet>
 	 * @param cmds        AtomicIntegerArray
 	 * @param output      PrintWriter
+	 * @param events      EventChannel, may be null
 	 * @param ourMAC      short
-	 * @param localOffset AtomicLong
+	 * @param clockSync   ClockSync
 	 * @param status      AtomicIntege
+	 * @param airtime     AirtimeStats
+	 * @param profile     StateProfile
+	 * @param rtt         RttEstimator
+	 * @param flow        FlowControl
+	 * @param carrier     CarrierSense, only used on a thread
 	 */
-	public Sender(RF theRF, ArrayBlockingQueue<Packet> outgoing, ArrayBlockingQueue<Integer> acks,
-			AtomicIntegerArray cmds, PrintWriter output, short ourMAC, AtomicLong localOffset, AtomicInteger status) {
-		this.cwSize = RF.aCWmin;
-		this.count = (int) (Math.random() * (cwSize + 1));
+	public Sender(Medium medium, MacClock clock, Random random, ArrayBlockingQueue<Packet> outgoing,
+			AtomicInteger outgoingCount, AtomicReference<Tunables> tunables, ArrayBlockingQueue<Packet> acks,
+			AtomicIntegerArray cmds, PrintWriter output, EventChannel events, short ourMAC, ClockSync clockSync, AtomicInteger status, AirtimeStats airtime, StateProfile profile, RttEstimator rtt, FlowControl flow,
+			CarrierSense carrier) {
+		this.cwSize = tunables.get().getCwMin();
+		this.random = random;
+		this.count = random.nextInt(cwSize + 1);
 		this.retries = 0;
-		this.theRF = theRF;
+		this.medium = medium;
+		this.clock = clock;
 		this.outgoing = outgoing;
+		this.outgoingCount = outgoingCount;
+		this.tunables = tunables;
 		this.acks = acks;
 		this.cmds = cmds;
 		this.output = output;
+		this.events = events;
 		this.ourMAC = ourMAC;
-		this.localOffset = localOffset;
+		this.clockSync = clockSync;
 		this.status = status;
 		this.myState = State.awaitData;
+		this.running = true;
+		this.airtime = airtime;
+		this.profile = profile;
+		this.rtt = rtt;
+		this.flow = flow;
+		this.carrier = carrier;
+		this.beaconStartTime = clock.currentTimeMillis();
+		this.held = new LinkedHashMap<Short, Held>();
+		this.seqNums = new SequenceCounters();
 	}
 
 	/**
-	 * Starts the sender class
+	 * Runs the sender on its own thread, blocking for whatever each step waits for
 	 */
 	@Override
 	public void run() {
-		Packet packet = null;
-		boolean isBroadcast = false;
-		long beaconStartTime = System.currentTimeMillis();
-		while (true) {
-			switch (myState) {
-			case awaitData:
-				// check if beacon timer is over
-				if ((System.currentTimeMillis() - beaconStartTime > cmds.get(2) * 1000) && cmds.get(2) > 0) {
-					long validClockTime = getLocalTime() + beaconSendOffset;
-					byte[] data = new byte[8];
-					for (int i = 0; i < 8; i++) {
-						data[i] = (byte) (validClockTime >> 56 - (8 * i));
-					}
-					packet = new Packet((short) 2, (short) 0, 0, ourMAC, (short) -1, data, 8);
-					isBroadcast = true;
-					if (cmds.get(0) == -1 || cmds.get(0) == -2) {
-						output.println("Sender: Starting to send Beacon with time: " + validClockTime);
-					}
-					if (!theRF.inUse()) {
-						myState = State.idleDIFSWait;
-					}
-					else {
-						resetCW();
-						myState = State.idleWait;
-					}
-				}
-				// check if outgoing queue has packets to send
-				else if (outgoing.size() > 0) {
-					packet = outgoing.poll();
-					isBroadcast = packet.getDest() == (short) -1;
-					if (cmds.get(0) == -1) {
-						output.println("Sender: Starting to send Data");
-					}
-					if (!theRF.inUse()) {
-						myState = State.idleDIFSWait;
-					}
-					else {
-						resetCW();
-						myState = State.idleWait;
-					}
-				}
-				// sleep to avoid busy wait
-				else {
-					sleep(20);
-				}
-
+		while (running) {
+			switch (step()) {
+			case time:
+			case data:
+				sleepUntil(wakeAt);
 				break;
-			case idleDIFSWait:
-				if (cmds.get(0) == -1) {
-					output.println("Sender: Idle DIFS waiting starting at " + getLocalTime());
-				}
-				waitDIFS();
-				if (cmds.get(0) == -1) {
-					output.println("Sender: Idle DIFS waiting finished at " + getLocalTime());
-				}
-				if (!theRF.inUse()) {
-					theRF.transmit(packet.getFrame());
-
-					if (cmds.get(0) == -1 || cmds.get(0) == -2) {
-						output.println("Sender: Transmited packet " + packet);
-						output.println("Sender: Finished transmitting packet at time " + getLocalTime());
-					}
-					myState = State.awaitAck;
-				}
-				else {
-					myState = State.idleWait;
-				}
+			case idle:
+				// woken by the carrier sense monitor as soon as the medium goes idle
+				carrier.awaitIdle(100);
 				break;
-			case awaitAck:
-				// if its a broadcast we don't wait for ack
-				if (isBroadcast) {
-					resetCW();
-					retries = 0;
-					if (packet.isBeacon()) {
-						beaconStartTime = System.currentTimeMillis();
-					}
-					myState = State.awaitData;
-					break;
-				}
-				if (cmds.get(0) == -1) {
-					output.println("Sender: Awaiting Ack");
-				}
-				long startTime = System.currentTimeMillis();
-				boolean timeout = true;
-				// loop until timer expires or ack is received
-				while (System.currentTimeMillis() - startTime < timeoutTime) {
-					if (acks.size() > 0) {
-						int sequenceNumber = acks.poll();
-						if (sequenceNumber == packet.getSequenceNumber()) {
-							// correct ack has been received
-							timeout = false;
-							status.set(4);
-							if (cmds.get(0) == -1) {
-								output.println("Sender: Ack received");
-							}
-							break;
-						}
-					}
-					// Sleep to avoid busy wait
-					sleep(20);
-				}
-				// ack not received
-				if (timeout) {
-					if (cmds.get(0) == -1) {
-						output.println("Sender: Ack not received, timeout");
-					}
-					retries++;
-					if (cmds.get(0) == -1) {
-						output.println("Sender: Retry number set to " + retries);
-					}
-					// retry limit reached
-					if (retries > RF.dot11RetryLimit) {
-						if (cmds.get(0) == -1) {
-							output.println("Sender: Retry limit reached");
-						}
-						status.set(5);
-						resetCW();
-						retries = 0;
-						myState = State.awaitData;
-					}
-					else {
-						// expand collision window
-						cwSize = Math.min(RF.aCWmax, cwSize * 2);
-						if (cmds.get(1) == 0) {
-							count = (int) (Math.random() * (cwSize + 1));
-						}
-						else {
-							count = cwSize;
-						}
-						if (cmds.get(0) == -1) {
-							output.println(
-									"Sender: Collission window size doubled to " + cwSize + ", Count set to " + count);
-						}
-						myState = State.idleWait;
-					}
-				}
-				// ack received
-				else {
-					resetCW();
-					retries = 0;
-					myState = State.awaitData;
-				}
+			case ack:
+				heldAck = pollAck(wakeAt - clock.nanoTime());
 				break;
-			case idleWait:
-				while (theRF.inUse()) {
-					sleep(20);
-				}
-				myState = State.busyDIFSWait;
+			default:
 				break;
-			case busyDIFSWait:
-				if (cmds.get(0) == -1) {
-					output.println("Sender: Busy DIFS waiting starting at " + getLocalTime());
-				}
-				waitDIFS();
+			}
+		}
+		discardFrames(clock.nanoTime());
+	}
+
+	/**
+	 * Fails the receipts of the frame in hand and of the held frames, once the
+	 * sender has stopped
+	 * 
+	 * @param now long clock nanoTime()
+	 */
+	public void discardFrames(long now) {
+		if (packet != null) {
+			packet.discard(now);
+			packet = null;
+		}
+		for (Held each : held.values()) {
+			for (Packet frame : each.frames) {
+				outgoingCount.decrementAndGet();
+				frame.discard(now);
+			}
+		}
+		held.clear();
+	}
+
+	/**
+	 * Runs the state machine until it has to wait. The thread in {@link #run()}
+	 * blocks for what is returned, a simulation schedules the next step instead.
+	 * Nothing in here blocks, the medium aside
+	 * 
+	 * @return what to wait for before the next step, see {@link #getWakeAt()}
+	 */
+	public Wait step() {
+		State before = myState;
+		Wait wait = advance(clock.nanoTime());
+		if (myState != before) {
+			profile.transition(before, myState);
+		}
+		return wait;
+	}
+
+	/**
+	 * Handles the current state, changing state at most once
+	 */
+	private Wait advance(long now) {
+		switch (myState) {
+		case awaitData:
+			return awaitData(now);
+		case idleDIFSWait:
+			return idleDIFSWait(now);
+		case awaitAck:
+			return awaitAck(now);
+		case idleWait:
+			if (medium.inUse()) {
+				return Wait.idle;
+			}
+			myState = State.busyDIFSWait;
+			return Wait.none;
+		case busyDIFSWait:
+			return busyDIFSWait(now);
+		case slotWait:
+			return slotWait(now);
+		default:
+			if (cmds.get(0) == -1) {
+				output.println("Unexpected state!");
+			}
+			return Wait.none;
+		}
+	}
+
+	/**
+	 * gets the time the last step waits until, for Wait.time and Wait.data, and
+	 * the ACK timeout for Wait.ack
+	 * 
+	 * @return clock nanoTime()
+	 */
+	public long getWakeAt() {
+		return wakeAt;
+	}
+
+	/**
+	 * Takes a beacon or a frame to send
+	 */
+	private Wait awaitData(long now) {
+		// check if beacon timer is over
+		if ((clock.currentTimeMillis() - beaconStartTime > cmds.get(2) * 1000) && cmds.get(2) > 0) {
+			// the time is stamped again right before the beacon is transmitted
+			packet = makeBeacon(clockSync.beaconTime());
+			isBroadcast = true;
+			profile.frameTaken(-1);
+			if (cmds.get(0) == -1 || cmds.get(0) == -2) {
+				output.println("Sender: Starting to send Beacon");
+			}
+			return contend();
+		}
+		packet = nextFrame();
+		// nothing to send, look again in a while
+		if (packet == null) {
+			wakeAt = now + TimeUnit.MILLISECONDS.toNanos(20);
+			return Wait.data;
+		}
+		outgoingCount.decrementAndGet();
+		packet.setSequenceNumber(seqNums.next(packet.getSource(), packet.getDest()));
+		profile.frameTaken(packet.getQueuedNanos());
+		isBroadcast = GroupMembership.isMulticast(packet.getDest());
+		if (cmds.get(0) == -1) {
+			output.println("Sender: Starting to send Data");
+		}
+		return contend();
+	}
+
+	/**
+	 * Takes the next frame whose destination has room for it, which is the first
+	 * held frame whose destination has room by now, or else the first queued
+	 * frame. A queued frame for a destination whose last ACK said its buffer has
+	 * no room, or that already has frames held, is held behind them, so only that
+	 * destination waits and its frames stay in order
+	 * 
+	 * @return the frame, or null if there is none to send now
+	 */
+	private Packet nextFrame() {
+		long clockNow = medium.clock();
+		Iterator<Map.Entry<Short, Held>> it = held.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Short, Held> entry = it.next();
+			Held each = entry.getValue();
+			Packet frame = each.frames.peek();
+			if (flow.pauseFor(entry.getKey(), frame.getFrame().length, clockNow, cmds.get(10)) > 0) {
+				continue;
+			}
+			each.frames.poll();
+			long waited = clockNow - each.since;
+			if (waited > 0) {
+				flow.paused(waited);
 				if (cmds.get(0) == -1) {
-					output.println("Sender: Busy DIFS waiting finished at " + getLocalTime());
-				}
-				if (theRF.inUse()) {
-					myState = State.idleWait;
+					output.println("Sender: Held frame for " + entry.getKey() + " " + waited + " ms for buffer space");
 				}
-				else {
-					myState = State.slotWait;
+			}
+			if (each.frames.isEmpty()) {
+				it.remove();
+			}
+			else {
+				each.since = clockNow;
+			}
+			return frame;
+		}
+		Packet frame;
+		while ((frame = outgoing.poll()) != null) {
+			short dest = frame.getDest();
+			if (GroupMembership.isMulticast(dest)) {
+				return frame;
+			}
+			Held each = held.get(dest);
+			if (each == null) {
+				if (flow.pauseFor(dest, frame.getFrame().length, clockNow, cmds.get(10)) == 0) {
+					return frame;
 				}
-				break;
-			case slotWait:
-				if (cmds.get(0) == -1) {
-					output.println("Sender: Slot waiting with count " + count);
+				each = new Held();
+				each.since = clockNow;
+				held.put(dest, each);
+			}
+			each.frames.add(frame);
+		}
+		return null;
+	}
+
+	/**
+	 * Starts contending for the medium with the frame in hand
+	 */
+	private Wait contend() {
+		if (!medium.inUse()) {
+			myState = State.idleDIFSWait;
+		}
+		else {
+			resetCW();
+			myState = State.idleWait;
+		}
+		phase = 0;
+		return Wait.none;
+	}
+
+	/**
+	 * Waits DIFS on a medium that was idle, then transmits if it still is
+	 */
+	private Wait idleDIFSWait(long now) {
+		if (phase == 0) {
+			if (cmds.get(0) == -1) {
+				output.println("Sender: Idle DIFS waiting starting at " + getLocalTime());
+			}
+			return waitDIFS(now);
+		}
+		if (phase == 2) {
+			return transmitted();
+		}
+		endDIFS(now);
+		if (cmds.get(0) == -1) {
+			output.println("Sender: Idle DIFS waiting finished at " + getLocalTime());
+		}
+		if (!medium.inUse()) {
+			return transmit(now);
+		}
+		myState = State.idleWait;
+		phase = 0;
+		return Wait.none;
+	}
+
+	/**
+	 * Waits DIFS after the medium went idle, then starts the backoff
+	 */
+	private Wait busyDIFSWait(long now) {
+		if (phase == 0) {
+			if (cmds.get(0) == -1) {
+				output.println("Sender: Busy DIFS waiting starting at " + getLocalTime());
+			}
+			return waitDIFS(now);
+		}
+		endDIFS(now);
+		if (cmds.get(0) == -1) {
+			output.println("Sender: Busy DIFS waiting finished at " + getLocalTime());
+		}
+		myState = medium.inUse() ? State.idleWait : State.slotWait;
+		phase = 0;
+		return Wait.none;
+	}
+
+	/**
+	 * Counts down the backoff one slot at a time while the medium stays idle, and
+	 * transmits when the count runs out
+	 */
+	private Wait slotWait(long now) {
+		if (phase == 0) {
+			if (cmds.get(0) == -1) {
+				output.println("Sender: Slot waiting with count " + count);
+			}
+			phaseStart = now;
+			wakeAt = now + TimeUnit.MILLISECONDS.toNanos(RF.aSlotTime);
+			phase = 1;
+			return Wait.time;
+		}
+		if (phase == 2) {
+			return transmitted();
+		}
+		backoffNanos += now - phaseStart;
+		phase = 0;
+		if (medium.inUse()) {
+			myState = State.idleWait;
+			return Wait.none;
+		}
+		if (count > 1) {
+			count--;
+			return Wait.none;
+		}
+		// slot count finished
+		if (retries > 0) {
+			packet.setRetryFlag(true);
+		}
+		return transmit(now);
+	}
+
+	/**
+	 * Waits for the ACK of the frame just transmitted, and retries or gives up
+	 * when it doesn't come in time
+	 */
+	private Wait awaitAck(long now) {
+		if (phase == 0) {
+			// if its a broadcast or group frame we don't wait for ack
+			if (isBroadcast) {
+				if (beacon) {
+					beaconStartTime = clock.currentTimeMillis();
 				}
-				sleep(RF.aSlotTime);
-				if (theRF.inUse()) {
-					myState = State.idleWait;
+				frameDone(true, now);
+				return Wait.none;
+			}
+			if (cmds.get(0) == -1) {
+				output.println("Sender: Awaiting Ack");
+			}
+			phaseStart = now;
+			wakeAt = now + TimeUnit.MILLISECONDS.toNanos(rtt.timeout(packet.getDest(), retries,
+					tunables.get().getInitialAckTimeout(), cmds.get(4), cmds.get(5)));
+			phase = 1;
+		}
+		Packet ack;
+		while ((ack = nextAck()) != null) {
+			if (answers(ack)) {
+				// correct ack has been received
+				ackNanos += now - phaseStart;
+				// only sample first transmissions, a retry's ack could answer either one
+				if (retries == 0) {
+					rtt.ackReceived(packet.getDest(), TimeUnit.NANOSECONDS.toMillis(now - phaseStart));
 				}
-				else {
-					if (count > 1) {
-						count--;
-					}
-					// slot count finished
-					else {
-						if (retries > 0) {
-							packet.setRetryFlag(true);
-						}
-						theRF.transmit(packet.getFrame());
-						if (cmds.get(0) == -1 || cmds.get(0) == -2) {
-							output.println("Sender: Transmited packet " + packet);
-							output.println("Sender: Finished transmitting packet at time " + getLocalTime());
-						}
-						myState = State.awaitAck;
-					}
+				status.set(4);
+				if (events != null) {
+					events.publish(LinkEvent.status(4, packet.getDest(), retries));
 				}
-				break;
-			default:
 				if (cmds.get(0) == -1) {
-					output.println("Unexpected state!");
+					output.println("Sender: Ack received");
 				}
-
+				frameDone(true, now);
+				return Wait.none;
+			}
+		}
+		// wait until timer expires or ack is received
+		if (now < wakeAt) {
+			return Wait.ack;
+		}
+		ackNanos += now - phaseStart;
+		phase = 0;
+		// ack not received
+		if (cmds.get(0) == -1) {
+			output.println("Sender: Ack not received, timeout");
+		}
+		retries++;
+		if (cmds.get(0) == -1) {
+			output.println("Sender: Retry number set to " + retries);
+		}
+		// retry limit reached
+		if (retries > tunables.get().getRetryLimit()) {
+			if (cmds.get(0) == -1) {
+				output.println("Sender: Retry limit reached");
+			}
+			status.set(5);
+			if (events != null) {
+				events.publish(LinkEvent.status(5, packet.getDest(), retries - 1));
+			}
+			frameDone(false, now);
+		}
+		else {
+			// expand collision window
+			cwSize = Math.min(tunables.get().getCwMax(), Math.max(1, cwSize * 2));
+			if (cmds.get(1) == 0) {
+				count = random.nextInt(cwSize + 1);
+			}
+			else {
+				count = cwSize;
 			}
+			if (cmds.get(0) == -1) {
+				output.println(
+						"Sender: Collission window size doubled to " + cwSize + ", Count set to " + count);
+			}
+			myState = State.idleWait;
+		}
+		return Wait.none;
+	}
+
+	/**
+	 * Tells whether an ACK is for the frame in hand. Each address we host numbers
+	 * its frames per destination on its own, so the sequence number alone could
+	 * belong to another of our addresses' frames
+	 * 
+	 * @param ack Packet
+	 * @return true if it came from the frame's destination to its source with
+	 *         its sequence number
+	 */
+	private boolean answers(Packet ack) {
+		return ack.getSource() == packet.getDest() && ack.getDest() == packet.getSource()
+				&& ack.getSequenceNumber() == packet.getSequenceNumber();
+	}
+
+	/**
+	 * gets the next ACK, starting with one the thread took while waiting
+	 * 
+	 * @return the ack, or null if there is none
+	 */
+	private Packet nextAck() {
+		Packet held = heldAck;
+		if (held != null) {
+			heldAck = null;
+			return held;
 		}
+		return acks.poll();
 	}
 
 	/**
 	 * puts the sender thread to sleep
 	 * 
-	 * @param time int
+	 * @param deadline long clock nanoTime() to sleep until
 	 */
-	private void sleep(int time) {
+	private void sleepUntil(long deadline) {
+		long left = deadline - clock.nanoTime();
+		if (left <= 0) {
+			return;
+		}
 		try {
-			Thread.sleep(time);
+			TimeUnit.NANOSECONDS.sleep(left);
 		}
 		catch (InterruptedException e) {
-			System.err.println("Error while putting thread to sleep");
+			if (running) {
+				System.err.println("Error while putting thread to sleep");
+			}
+		}
+	}
+
+	/**
+	 * Tells the sender to stop after the step it is in
+	 */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Tells whether the sender is between frames
+	 * 
+	 * @return true if it is waiting for data
+	 */
+	public boolean isIdle() {
+		return myState == State.awaitData && packet == null;
+	}
+
+	/**
+	 * waits for the next ack to arrive
+	 * 
+	 * @param nanos long longest time to wait
+	 * @return the ack, or null if none arrived in time
+	 */
+	private Packet pollAck(long nanos) {
+		try {
+			return acks.poll(nanos, TimeUnit.NANOSECONDS);
+		}
+		catch (InterruptedException e) {
+			if (running) {
+				System.err.println("Error while waiting for ack");
+			}
+			return null;
 		}
 	}
 
@@ -290,9 +601,9 @@ public class Sender implements Runnable {
 	 * Resets the collision window in the sender
 	 */
 	private void resetCW() {
-		cwSize = RF.aCWmin;
+		cwSize = tunables.get().getCwMin();
 		if (cmds.get(1) == 0) {
-			count = (int) (Math.random() * (cwSize + 1));
+			count = random.nextInt(cwSize + 1);
 		}
 		else {
 			count = cwSize;
@@ -304,11 +615,107 @@ public class Sender implements Runnable {
 	}
 
 	/**
-	 * Waits DIFS time plus rounding according to local time
+	 * Starts waiting DIFS time plus rounding according to local time. The slot
+	 * grid is set through the commands: 0 means no rounding, -1 rounds to
+	 * RF.aSlotTime and any other value rounds to that many milliseconds
 	 */
-	private void waitDIFS() {
-		long roundTime = 50 - getLocalTime() % 50;
-		sleep(DIFSTime + (int) roundTime);
+	private Wait waitDIFS(long now) {
+		int grid = cmds.get(3);
+		if (grid < 0) {
+			grid = RF.aSlotTime;
+		}
+		long roundTime = grid == 0 ? 0 : grid - getLocalTime() % grid;
+		phaseStart = now;
+		wakeAt = now + TimeUnit.MILLISECONDS.toNanos(DIFSTime + roundTime);
+		phase = 1;
+		return Wait.time;
+	}
+
+	/**
+	 * Counts the time waited since {@link #waitDIFS(long)} as DIFS and rounding
+	 */
+	private void endDIFS(long now) {
+		long waited = now - phaseStart;
+		long difs = Math.min(waited, TimeUnit.MILLISECONDS.toNanos(DIFSTime));
+		difsNanos += difs;
+		roundNanos += waited - difs;
+		phase = 0;
+	}
+
+	/**
+	 * Hands the time spent on a frame to the airtime statistics and starts over
+	 * for the next one
+	 * 
+	 * @param isDelivered boolean
+	 * @param now         long clock nanoTime()
+	 */
+	private void frameDone(boolean isDelivered, long now) {
+		// retries has already been counted past the limit when the frame failed
+		packet.complete(isDelivered, isDelivered ? retries : retries - 1, now);
+		airtime.frameDone(isDelivered, packet.getDataLength(), difsNanos, roundNanos, backoffNanos, txNanos, ackNanos);
+		difsNanos = 0;
+		roundNanos = 0;
+		backoffNanos = 0;
+		txNanos = 0;
+		ackNanos = 0;
+		resetCW();
+		retries = 0;
+		packet = null;
+		beacon = false;
+		phase = 0;
+		myState = State.awaitData;
+	}
+
+	/**
+	 * Transmits the frame in hand and waits for the transmission to be over.
+	 * Beacons are stamped with the current time right before they go out
+	 */
+	private Wait transmit(long now) {
+		if (packet.isBeacon()) {
+			stampedRaw = medium.clock();
+			long validClockTime = clockSync.beaconTime();
+			packet = makeBeacon(validClockTime);
+			beacon = true;
+			if (cmds.get(0) == -1 || cmds.get(0) == -2) {
+				output.println("Sender: Sent Beacon with time: " + validClockTime);
+			}
+		}
+		phaseStart = now;
+		wakeAt = medium.transmit(packet.getFrame());
+		phase = 2;
+		return wakeAt > clock.nanoTime() ? Wait.time : Wait.none;
+	}
+
+	/**
+	 * Finishes a transmission, feeding the time it took back to the clock
+	 * synchronization for a beacon, and goes on to wait for the ACK
+	 */
+	private Wait transmitted() {
+		txNanos += clock.nanoTime() - phaseStart;
+		if (beacon) {
+			clockSync.beaconSent(stampedRaw);
+		}
+		if (cmds.get(0) == -1 || cmds.get(0) == -2) {
+			output.println("Sender: Transmited packet " + packet);
+			output.println("Sender: Finished transmitting packet at time " + getLocalTime());
+		}
+		myState = State.awaitAck;
+		phase = 0;
+		return Wait.none;
+	}
+
+	/**
+	 * Builds a beacon carrying the given time
+	 * 
+	 * @param validClockTime long
+	 * @return beacon Packet
+	 */
+	private Packet makeBeacon(long validClockTime) {
+		byte[] data = new byte[8];
+		for (int i = 0; i < 8; i++) {
+			data[i] = (byte) (validClockTime >> 56 - (8 * i));
+		}
+		return new Packet((short) 2, (short) 0, 0, ourMAC, (short) -1, data, 8);
 	}
 
 	/**
@@ -317,7 +724,7 @@ public class Sender implements Runnable {
 	 * @return time long
 	 */
 	private long getLocalTime() {
-		return theRF.clock() + localOffset.get();
+		return clockSync.localTime();
 	}
 
 }
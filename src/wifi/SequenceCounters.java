@@ -0,0 +1,86 @@
+package wifi;
+
+/**
+ * The next sequence number for every source and destination we have sent
+ * between. Only the sender numbers frames, when it takes them off the queue,
+ * so the table belongs to its thread: open-addressed, keyed by the primitive
+ * addresses, with no locks and no boxing. It doubles when half full.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class SequenceCounters {
+
+	private int[] keys; // source in the high half, destination in the low half
+	private int[] next;
+	private boolean[] used;
+	private int size;
+
+	/**
+	 * Creates an empty table
+	 */
+	public SequenceCounters() {
+		this.keys = new int[16];
+		this.next = new int[16];
+		this.used = new boolean[16];
+	}
+
+	/**
+	 * Takes the next sequence number from a source to a destination. The first
+	 * number for a pair is 0
+	 *
+	 * @param source short
+	 * @param dest   short
+	 * @return the unmasked counter, the sequence number is its low 12 bits
+	 */
+	public int next(short source, short dest) {
+		int key = (source << 16) | (dest & 0xFFFF);
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (used[i]) {
+			if (keys[i] == key) {
+				return next[i]++;
+			}
+			i = (i + 1) & mask;
+		}
+		used[i] = true;
+		keys[i] = key;
+		next[i] = 1;
+		if (++size * 2 > keys.length) {
+			grow();
+		}
+		return 0;
+	}
+
+	/**
+	 * Moves every counter into a table twice the size
+	 */
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldNext = next;
+		boolean[] oldUsed = used;
+		keys = new int[oldKeys.length * 2];
+		next = new int[oldKeys.length * 2];
+		used = new boolean[oldKeys.length * 2];
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldUsed[j]) {
+				int i = hash(oldKeys[j]) & mask;
+				while (used[i]) {
+					i = (i + 1) & mask;
+				}
+				used[i] = true;
+				keys[i] = oldKeys[j];
+				next[i] = oldNext[j];
+			}
+		}
+	}
+
+	/**
+	 * spreads keys that differ only in their high bits
+	 */
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,137 @@
+package wifi;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Runs a link layer's MAC on a {@link SimScheduler} instead of threads. Frames
+ * arriving on the simulated medium go straight to the receiver, and the
+ * sender's state machine is stepped as an event whenever what it waits for
+ * happens: its time comes, the medium goes idle, an ACK arrives or a frame is
+ * queued. A step the sender no longer waits for, because something else woke
+ * it first, is ignored when it comes due.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class SimDriver {
+
+	private static final long releaseNanos = 50000000L; // how often reorder gaps are checked
+
+	private Sender sender;
+	private Receiver receiver;
+	private SimMedium.Endpoint endpoint;
+	private SimScheduler scheduler;
+	private ArrayBlockingQueue<Packet> acks;
+	private Sender.Wait waiting; // what the sender waits for since its last step
+	private long generation; // counts wakeups, only the latest one steps the sender
+	private boolean running;
+
+	/**
+	 * Creates a driver
+	 *
+	 * @param sender   Sender
+	 * @param receiver Receiver
+	 * @param endpoint SimMedium.Endpoint the link layer's medium
+	 * @param acks     ArrayBlockingQueue<Packet> the ACKs the receiver hands the sender
+	 */
+	public SimDriver(Sender sender, Receiver receiver, SimMedium.Endpoint endpoint, ArrayBlockingQueue<Packet> acks) {
+		this.sender = sender;
+		this.receiver = receiver;
+		this.endpoint = endpoint;
+		this.scheduler = endpoint.getScheduler();
+		this.acks = acks;
+		this.waiting = Sender.Wait.none;
+	}
+
+	/**
+	 * Starts receiving, the sender and the reorder gap checks
+	 */
+	public void start() {
+		running = true;
+		endpoint.setListener(new SimMedium.FrameListener() {
+			public void frameArrived(byte[] frame, long receivedAt, long receivedNanos) {
+				if (!running) {
+					return;
+				}
+				receiver.process(frame, receivedAt, receivedNanos);
+				if (waiting == Sender.Wait.ack && !acks.isEmpty()) {
+					wake();
+				}
+			}
+		});
+		scheduler.schedule(scheduler.nanoTime() + releaseNanos, new Runnable() {
+			public void run() {
+				if (running) {
+					receiver.releaseExpired();
+					scheduler.schedule(scheduler.nanoTime() + releaseNanos, this);
+				}
+			}
+		});
+		wake();
+	}
+
+	/**
+	 * Stops everything, events already scheduled do nothing when they come due
+	 */
+	public void stop() {
+		running = false;
+		generation++;
+		endpoint.setListener(null);
+	}
+
+	/**
+	 * Tells the driver a frame was queued, waking the sender if it is looking for
+	 * one
+	 */
+	public void frameQueued() {
+		if (waiting == Sender.Wait.data) {
+			wake();
+		}
+	}
+
+	/**
+	 * Steps the sender now
+	 */
+	private void wake() {
+		stepAt(scheduler.nanoTime());
+	}
+
+	/**
+	 * Schedules the next step, replacing any scheduled before
+	 *
+	 * @param atNanos long
+	 */
+	private void stepAt(long atNanos) {
+		final long wakeup = ++generation;
+		scheduler.schedule(atNanos, new Runnable() {
+			public void run() {
+				if (running && wakeup == generation) {
+					step();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Steps the sender until it has to wait, and arranges to be woken for it
+	 */
+	private void step() {
+		Sender.Wait wait;
+		while ((wait = sender.step()) == Sender.Wait.none) {
+		}
+		waiting = wait;
+		if (wait == Sender.Wait.idle) {
+			final long wakeup = ++generation;
+			endpoint.whenIdle(new Runnable() {
+				public void run() {
+					if (running && wakeup == generation) {
+						step();
+					}
+				}
+			});
+		}
+		else {
+			stepAt(sender.getWakeAt());
+		}
+	}
+}
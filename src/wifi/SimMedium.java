@@ -0,0 +1,316 @@
+package wifi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A simulated shared channel. Every station attached to it gets its own
+ * {@link Endpoint}, which the link layer uses in place of the RF layer. A
+ * frame keeps the channel busy for its length times the airtime per byte, and
+ * at the end it reaches every other endpoint, unless another transmission
+ * overlapped it, in which case both are lost. A transmission can only be
+ * sensed after the instant it starts, so stations that start at the same
+ * instant, like stations that pick the same slot, don't see each other and
+ * collide. Optionally every frame is also lost on the way to each endpoint
+ * with a fixed probability, and handed over only after a random processing
+ * delay, to model a noisy channel and slow stations.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class SimMedium {
+
+	private static final long rfNanosPerByte = 100000000L; // the RF layer sends a byte every 100 ms
+
+	/**
+	 * Called with a frame when it arrives at an endpoint
+	 */
+	public interface FrameListener {
+
+		/**
+		 * @param frame         byte[]
+		 * @param receivedAt    long medium clock in ms
+		 * @param receivedNanos long scheduler time in ns
+		 */
+		void frameArrived(byte[] frame, long receivedAt, long receivedNanos);
+	}
+
+	/**
+	 * A transmission on the channel
+	 */
+	private static class Signal {
+		Endpoint from;
+		byte[] frame;
+		long start;
+		long end;
+		boolean collided;
+	}
+
+	private SimScheduler scheduler;
+	private long nanosPerByte;
+	private List<Endpoint> endpoints;
+	private List<Signal> active; // transmissions not over yet
+	private List<Runnable> idleWaiters;
+	private long transmissions;
+	private long collided;
+	private long busyNanos;
+	private long busySince;
+	private Random random; // for losses and delays
+	private double loss;
+	private long lost;
+	private long minDelay;
+	private long maxDelay;
+
+	/**
+	 * Creates a channel as fast as the RF layer
+	 *
+	 * @param scheduler SimScheduler
+	 */
+	public SimMedium(SimScheduler scheduler) {
+		this(scheduler, rfNanosPerByte);
+	}
+
+	/**
+	 * Creates a channel
+	 *
+	 * @param scheduler    SimScheduler
+	 * @param nanosPerByte long airtime of one byte
+	 */
+	public SimMedium(SimScheduler scheduler, long nanosPerByte) {
+		this.scheduler = scheduler;
+		this.nanosPerByte = nanosPerByte;
+		this.endpoints = new ArrayList<Endpoint>();
+		this.active = new ArrayList<Signal>();
+		this.idleWaiters = new ArrayList<Runnable>();
+		// a salt no MAC address uses
+		this.random = scheduler.random(1L << 32);
+	}
+
+	/**
+	 * Sets the chance that a frame that didn't collide is still lost on its way
+	 * to an endpoint, drawn for every endpoint on its own
+	 *
+	 * @param loss double between 0 and 1
+	 */
+	public void setLoss(double loss) {
+		this.loss = loss;
+	}
+
+	/**
+	 * Sets how long an endpoint takes to process a frame before it is handed
+	 * over, drawn evenly between the two for every frame. Each endpoint handles
+	 * its frames in the order they arrived
+	 *
+	 * @param minNanos long
+	 * @param maxNanos long
+	 */
+	public void setDelay(long minNanos, long maxNanos) {
+		this.minDelay = minNanos;
+		this.maxDelay = Math.max(minNanos, maxNanos);
+	}
+
+	/**
+	 * Attaches a station
+	 *
+	 * @return endpoint the station's view of the channel
+	 */
+	public Endpoint attach() {
+		Endpoint endpoint = new Endpoint();
+		endpoints.add(endpoint);
+		return endpoint;
+	}
+
+	/**
+	 * gets the scheduler the channel runs on
+	 *
+	 * @return scheduler SimScheduler
+	 */
+	public SimScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * gets the number of frames transmitted
+	 *
+	 * @return transmissions long
+	 */
+	public long getTransmissions() {
+		return transmissions;
+	}
+
+	/**
+	 * gets the number of frames lost to collisions
+	 *
+	 * @return collided long
+	 */
+	public long getCollided() {
+		return collided;
+	}
+
+	/**
+	 * gets the number of times a frame was lost on its way to an endpoint, see
+	 * {@link #setLoss(double)}
+	 *
+	 * @return lost long
+	 */
+	public long getLost() {
+		return lost;
+	}
+
+	/**
+	 * gets how long the channel has been busy
+	 *
+	 * @return busy time in ns
+	 */
+	public long getBusyNanos() {
+		return busyNanos + (active.isEmpty() ? 0 : scheduler.nanoTime() - busySince);
+	}
+
+	/**
+	 * Starts a transmission and schedules its end
+	 */
+	private long transmit(Endpoint from, byte[] frame) {
+		long now = scheduler.nanoTime();
+		final Signal signal = new Signal();
+		signal.from = from;
+		signal.frame = frame.clone();
+		signal.start = now;
+		signal.end = now + frame.length * nanosPerByte;
+		for (Signal other : active) {
+			if (other.end > now) {
+				other.collided = true;
+				signal.collided = true;
+			}
+		}
+		if (active.isEmpty()) {
+			busySince = now;
+		}
+		active.add(signal);
+		transmissions++;
+		scheduler.schedule(signal.end, new Runnable() {
+			public void run() {
+				finish(signal);
+			}
+		});
+		return signal.end;
+	}
+
+	/**
+	 * Ends a transmission, delivering the frame if nothing overlapped it, and
+	 * wakes the endpoints waiting for the channel to go idle
+	 */
+	private void finish(Signal signal) {
+		active.remove(signal);
+		long now = scheduler.nanoTime();
+		if (signal.collided) {
+			collided++;
+		}
+		else {
+			for (Endpoint endpoint : endpoints) {
+				if (endpoint == signal.from || endpoint.listener == null) {
+					continue;
+				}
+				if (loss > 0 && random.nextDouble() < loss) {
+					lost++;
+				}
+				else {
+					deliver(endpoint, signal.frame.clone(), now);
+				}
+			}
+		}
+		if (active.isEmpty()) {
+			busyNanos += now - busySince;
+			List<Runnable> waiting = new ArrayList<Runnable>(idleWaiters);
+			idleWaiters.clear();
+			for (Runnable waiter : waiting) {
+				scheduler.execute(waiter);
+			}
+		}
+	}
+
+	/**
+	 * Hands a frame to an endpoint, after its processing delay if there is one
+	 */
+	private void deliver(final Endpoint endpoint, final byte[] frame, long now) {
+		if (maxDelay == 0) {
+			endpoint.listener.frameArrived(frame, now / 1000000, now);
+			return;
+		}
+		long delay = minDelay + (long) (random.nextDouble() * (maxDelay - minDelay));
+		// frames don't overtake each other in the endpoint's processing
+		endpoint.handledAt = Math.max(endpoint.handledAt, now + delay);
+		scheduler.schedule(endpoint.handledAt, new Runnable() {
+			public void run() {
+				if (endpoint.listener != null) {
+					long at = scheduler.nanoTime();
+					endpoint.listener.frameArrived(frame, at / 1000000, at);
+				}
+			}
+		});
+	}
+
+	/**
+	 * One station's view of the channel
+	 */
+	public class Endpoint implements Medium {
+		private FrameListener listener;
+		private long handledAt; // ns the last frame given to it is handed over
+
+		private Endpoint() {
+		}
+
+		/**
+		 * Sets who frames arriving here are handed to
+		 *
+		 * @param listener FrameListener
+		 */
+		public void setListener(FrameListener listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * Runs an action as soon as the channel is idle, right away if it is
+		 *
+		 * @param action Runnable
+		 */
+		public void whenIdle(Runnable action) {
+			if (inUse()) {
+				idleWaiters.add(action);
+			}
+			else {
+				scheduler.execute(action);
+			}
+		}
+
+		/**
+		 * gets the scheduler the channel runs on
+		 *
+		 * @return scheduler SimScheduler
+		 */
+		public SimScheduler getScheduler() {
+			return scheduler;
+		}
+
+		@Override
+		public long transmit(byte[] frame) {
+			return SimMedium.this.transmit(this, frame);
+		}
+
+		@Override
+		public boolean inUse() {
+			long now = scheduler.nanoTime();
+			for (Signal signal : active) {
+				if (signal.start < now && signal.end > now) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public long clock() {
+			return scheduler.currentTimeMillis();
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package wifi;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+/**
+ * A discrete-event scheduler with a virtual clock, for running link layers in
+ * a simulation. Events run one at a time on the thread that calls
+ * {@link #run(long)}, in order of time and, for the same time, in the order
+ * they were scheduled; the clock jumps from one event to the next. With the
+ * same seed and the same events every run is identical, however fast the
+ * machine. Not thread safe: schedule only from that thread or before running.
+ * <p>
+ * As an executor it runs tasks as events at the current time, so it can be
+ * handed to {@link LinkLayer#setReceiveListener(ReceiveListener, Executor)}.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class SimScheduler implements MacClock, Executor {
+
+	/**
+	 * An action due at a virtual time
+	 */
+	private static class Event implements Comparable<Event> {
+		long at;
+		long order;
+		Runnable action;
+
+		public int compareTo(Event other) {
+			if (at != other.at) {
+				return at < other.at ? -1 : 1;
+			}
+			return order < other.order ? -1 : order == other.order ? 0 : 1;
+		}
+	}
+
+	private PriorityQueue<Event> queue;
+	private long now; // virtual ns since the start
+	private long scheduled; // events scheduled so far, orders events due at the same time
+	private long processed;
+	private long seed;
+
+	/**
+	 * Creates a scheduler with its clock at 0
+	 *
+	 * @param seed long all random numbers of the simulation derive from it
+	 */
+	public SimScheduler(long seed) {
+		this.queue = new PriorityQueue<Event>();
+		this.seed = seed;
+	}
+
+	@Override
+	public long nanoTime() {
+		return now;
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return now / 1000000;
+	}
+
+	@Override
+	public boolean isSimulated() {
+		return true;
+	}
+
+	/**
+	 * Schedules an action
+	 *
+	 * @param atNanos long virtual time, the past means now
+	 * @param action  Runnable
+	 */
+	public void schedule(long atNanos, Runnable action) {
+		Event event = new Event();
+		event.at = Math.max(atNanos, now);
+		event.order = scheduled++;
+		event.action = action;
+		queue.add(event);
+	}
+
+	/**
+	 * Schedules an action to run now, after the events already due now
+	 *
+	 * @param action Runnable
+	 */
+	@Override
+	public void execute(Runnable action) {
+		schedule(now, action);
+	}
+
+	/**
+	 * Runs events until the clock reaches the given time or there are none left
+	 *
+	 * @param untilNanos long virtual time to stop at, events due then still run
+	 * @return number of events run
+	 */
+	public long run(long untilNanos) {
+		long before = processed;
+		Event event;
+		while ((event = queue.peek()) != null && event.at <= untilNanos) {
+			queue.poll();
+			now = event.at;
+			processed++;
+			event.action.run();
+		}
+		now = Math.max(now, untilNanos);
+		return processed - before;
+	}
+
+	/**
+	 * Creates a random number generator for one part of the simulation. The same
+	 * seed and salt always give the same numbers
+	 *
+	 * @param salt long tells the generators apart, a MAC address for example
+	 * @return Random
+	 */
+	public Random random(long salt) {
+		return new Random(seed * 0x9E3779B97F4A7C15L + salt);
+	}
+
+	/**
+	 * gets the number of events run so far
+	 *
+	 * @return processed long
+	 */
+	public long getProcessed() {
+		return processed;
+	}
+}
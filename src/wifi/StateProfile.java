@@ -0,0 +1,161 @@
+package wifi;
+
+/**
+ * Adds up the time the sender spends in each of its states and counts the
+ * transitions between them, overall and for every frame from the moment it is
+ * taken off the outgoing queue until the sender is done with it. Along with
+ * the time frames waited in the queue this shows whether their latency goes to
+ * queueing, contention or ACK waits.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class StateProfile {
+
+	private static final Sender.State[] states = Sender.State.values();
+
+	private MacClock clock;
+	private Sender.State current;
+	private long enteredAt; // clock ns the current state was entered
+	private long since; // clock ns of the last reset
+	private long[] totalNanos;
+	private long[] entered;
+	private long[][] transitions; // from, to
+	// the frame in hand
+	private boolean inFrame;
+	private long[] frameNanos;
+	// frames done
+	private long frames;
+	private long queued; // frames that came through the queue, beacons don't
+	private long queueNanos;
+	private long maxQueueNanos;
+	private long[] framesNanos;
+	private long[] maxFrameNanos;
+
+	/**
+	 * Creates a profile of a sender that is waiting for data
+	 *
+	 * @param clock MacClock the sender runs on
+	 */
+	public StateProfile(MacClock clock) {
+		this.clock = clock;
+		this.current = Sender.State.awaitData;
+		this.totalNanos = new long[states.length];
+		this.entered = new long[states.length];
+		this.transitions = new long[states.length][states.length];
+		this.frameNanos = new long[states.length];
+		this.framesNanos = new long[states.length];
+		this.maxFrameNanos = new long[states.length];
+		this.enteredAt = clock.nanoTime();
+		this.since = enteredAt;
+	}
+
+	/**
+	 * Records a change of state. A frame is done when the sender goes back to
+	 * waiting for data
+	 *
+	 * @param from Sender.State
+	 * @param to   Sender.State
+	 */
+	public synchronized void transition(Sender.State from, Sender.State to) {
+		long now = clock.nanoTime();
+		account(now);
+		transitions[from.ordinal()][to.ordinal()]++;
+		entered[to.ordinal()]++;
+		current = to;
+		if (to == Sender.State.awaitData && inFrame) {
+			inFrame = false;
+			frames++;
+			for (int i = 0; i < states.length; i++) {
+				framesNanos[i] += frameNanos[i];
+				maxFrameNanos[i] = Math.max(maxFrameNanos[i], frameNanos[i]);
+				frameNanos[i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Records that the sender took a frame to send, which starts the frame's
+	 * profile
+	 *
+	 * @param queuedNanos long clock ns the frame was queued, -1 if it wasn't
+	 */
+	public synchronized void frameTaken(long queuedNanos) {
+		long now = clock.nanoTime();
+		// the time waiting for data so far wasn't spent on this frame
+		account(now);
+		inFrame = true;
+		if (queuedNanos >= 0) {
+			long waited = now - queuedNanos;
+			queued++;
+			queueNanos += waited;
+			maxQueueNanos = Math.max(maxQueueNanos, waited);
+		}
+	}
+
+	/**
+	 * Adds the time since the last change to the current state
+	 */
+	private void account(long now) {
+		long elapsed = now - enteredAt;
+		totalNanos[current.ordinal()] += elapsed;
+		if (inFrame) {
+			frameNanos[current.ordinal()] += elapsed;
+		}
+		enteredAt = now;
+	}
+
+	/**
+	 * Forgets everything recorded so far, except the frame in hand
+	 */
+	public synchronized void reset() {
+		long now = clock.nanoTime();
+		account(now);
+		since = now;
+		frames = 0;
+		queued = 0;
+		queueNanos = 0;
+		maxQueueNanos = 0;
+		for (int i = 0; i < states.length; i++) {
+			totalNanos[i] = 0;
+			entered[i] = 0;
+			framesNanos[i] = 0;
+			maxFrameNanos[i] = 0;
+			for (int j = 0; j < states.length; j++) {
+				transitions[i][j] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Summarizes the time per state, overall and per frame, and the transitions
+	 *
+	 * @return report String
+	 */
+	public synchronized String report() {
+		long now = clock.nanoTime();
+		account(now);
+		long total = now - since;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Sender states over %.1f s, now %s, %d frames done%n", total / 1e9, current, frames));
+		sb.append(String.format("  %-13s %12s %6s %9s %14s %12s%n", "State", "total ms", "share", "entered",
+				"ms per frame", "frame max ms"));
+		for (int i = 0; i < states.length; i++) {
+			sb.append(String.format("  %-13s %12.1f %5.1f%% %9d %14.1f %12.1f%n", states[i], totalNanos[i] / 1e6,
+					total == 0 ? 0.0 : 100.0 * totalNanos[i] / total, entered[i],
+					frames == 0 ? 0.0 : framesNanos[i] / 1e6 / frames, maxFrameNanos[i] / 1e6));
+		}
+		sb.append(String.format("  Outgoing queue: %.1f ms per frame, %.1f ms max, %d frames%n",
+				queued == 0 ? 0.0 : queueNanos / 1e6 / queued, maxQueueNanos / 1e6, queued));
+		sb.append("  Transitions:");
+		for (int i = 0; i < states.length; i++) {
+			for (int j = 0; j < states.length; j++) {
+				if (transitions[i][j] > 0) {
+					sb.append(" " + states[i] + "->" + states[j] + " " + transitions[i][j]);
+				}
+			}
+		}
+		sb.append("\n");
+		return sb.toString();
+	}
+}
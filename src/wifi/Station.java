@@ -0,0 +1,181 @@
+package wifi;
+
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The per-address state of one logical station hosted by a link layer: the
+ * queue of frames waiting for the application and the bytes they hold, the
+ * sequence numbers seen from each source and the reorder buffer. Several stations can share one RF layer
+ * and receive thread, see {@link LinkLayer#addAddress(short)}.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class Station {
+
+	private short mac;
+	private static final int maxFrames = 64; // bounds empty frames, the byte budget bounds the rest
+
+	private ArrayBlockingQueue<Packet> incoming;
+	private AtomicInteger queuedBytes; // frame bytes in incoming
+	private HashMap<Short, Integer> incomingSeqNums; // contains most recently used seqNum for every source
+	private ReorderBuffer reorder;
+	private volatile ReceiveDispatcher dispatcher; // pushes frames to the app, null when it uses recv()
+
+	/**
+	 * Creates a station
+	 * 
+	 * @param mac short
+	 */
+	public Station(short mac) {
+		this.mac = mac;
+		this.incoming = new ArrayBlockingQueue<Packet>(maxFrames);
+		this.queuedBytes = new AtomicInteger(0);
+		this.incomingSeqNums = new HashMap<Short, Integer>();
+		this.reorder = new ReorderBuffer();
+	}
+
+	/**
+	 * gets the MAC address of the station
+	 * 
+	 * @return mac short
+	 */
+	public short getMAC() {
+		return mac;
+	}
+
+	/**
+	 * gets the queue of frames waiting for the application
+	 * 
+	 * @return incoming ArrayBlockingQueue<Packet>
+	 */
+	public ArrayBlockingQueue<Packet> getIncoming() {
+		return incoming;
+	}
+
+	/**
+	 * Tells whether a frame fits in the incoming buffer
+	 * 
+	 * @param packet Packet
+	 * @param budget int bytes the buffer may hold
+	 * @return true if it fits
+	 */
+	public boolean fits(Packet packet, int budget) {
+		return incoming.remainingCapacity() > 0
+				&& queuedBytes.get() + packet.getFrame().length <= budget;
+	}
+
+	/**
+	 * Queues a frame for the application if it fits in the byte budget
+	 * 
+	 * @param packet Packet
+	 * @param budget int bytes the buffer may hold
+	 * @return false if the frame was dropped
+	 */
+	public boolean offer(Packet packet, int budget) {
+		int bytes = packet.getFrame().length;
+		int old;
+		do {
+			old = queuedBytes.get();
+			if (old + bytes > budget) {
+				return false;
+			}
+		} while (!queuedBytes.compareAndSet(old, old + bytes));
+		if (!incoming.offer(packet)) {
+			queuedBytes.addAndGet(-bytes);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Waits for a frame for the application
+	 * 
+	 * @return packet Packet
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Packet take() throws InterruptedException {
+		Packet packet = incoming.take();
+		queuedBytes.addAndGet(-packet.getFrame().length);
+		return packet;
+	}
+
+	/**
+	 * Takes a frame for the application without waiting
+	 * 
+	 * @return packet Packet, or null if there is none
+	 */
+	public Packet poll() {
+		Packet packet = incoming.poll();
+		if (packet != null) {
+			queuedBytes.addAndGet(-packet.getFrame().length);
+		}
+		return packet;
+	}
+
+	/**
+	 * Discards everything waiting for the application
+	 */
+	public void clear() {
+		while (poll() != null) {
+		}
+	}
+
+	/**
+	 * gets the space left in the incoming buffer
+	 * 
+	 * @param budget int bytes the buffer may hold
+	 * @return free bytes
+	 */
+	public int freeBytes(int budget) {
+		return Math.max(0, budget - queuedBytes.get());
+	}
+
+	/**
+	 * gets the bytes waiting for the application
+	 * 
+	 * @return queued bytes
+	 */
+	public int getQueuedBytes() {
+		return queuedBytes.get();
+	}
+
+	/**
+	 * gets the most recent sequence number received from every source
+	 * 
+	 * @return incomingSeqNums HashMap<Short, Integer>
+	 */
+	public HashMap<Short, Integer> getIncomingSeqNums() {
+		return incomingSeqNums;
+	}
+
+	/**
+	 * gets the reorder buffer
+	 * 
+	 * @return reorder ReorderBuffer
+	 */
+	public ReorderBuffer getReorder() {
+		return reorder;
+	}
+
+	/**
+	 * Sets the dispatcher that is told about every queued frame
+	 * 
+	 * @param dispatcher ReceiveDispatcher or null
+	 */
+	public void setDispatcher(ReceiveDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Tells the dispatcher, if any, that a frame was queued
+	 */
+	public void frameQueued() {
+		ReceiveDispatcher current = dispatcher;
+		if (current != null) {
+			current.frameReady();
+		}
+	}
+}
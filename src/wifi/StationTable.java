@@ -0,0 +1,128 @@
+package wifi;
+
+/**
+ * Maps MAC addresses to the {@link Station}s hosted by a link layer. Lookups
+ * happen for every received frame, so they use an open-addressed table keyed
+ * by the primitive address and take no locks. Changes are rare and copy the
+ * table, publishing the new copy in one volatile write.
+ * 
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class StationTable {
+
+	/**
+	 * An immutable snapshot of the table
+	 */
+	private static class Table {
+		final short[] keys;
+		final Station[] values;
+		final Station[] all;
+		final int mask;
+
+		Table(Station[] all) {
+			int capacity = 4;
+			while (capacity < all.length * 2) {
+				capacity <<= 1;
+			}
+			this.keys = new short[capacity];
+			this.values = new Station[capacity];
+			this.mask = capacity - 1;
+			this.all = all;
+			for (Station station : all) {
+				int i = hash(station.getMAC()) & mask;
+				while (values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = station.getMAC();
+				values[i] = station;
+			}
+		}
+	}
+
+	private volatile Table table;
+
+	/**
+	 * Creates an empty table
+	 */
+	public StationTable() {
+		this.table = new Table(new Station[0]);
+	}
+
+	/**
+	 * Finds the station with the given address
+	 * 
+	 * @param mac short
+	 * @return station Station, or null if we don't host that address
+	 */
+	public Station get(short mac) {
+		Table current = table;
+		int i = hash(mac) & current.mask;
+		Station station;
+		while ((station = current.values[i]) != null) {
+			if (current.keys[i] == mac) {
+				return station;
+			}
+			i = (i + 1) & current.mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a station, replacing any station with the same address
+	 * 
+	 * @param station Station
+	 */
+	public synchronized void add(Station station) {
+		Station[] old = table.all;
+		Station[] all = new Station[old.length + 1];
+		int n = 0;
+		for (Station existing : old) {
+			if (existing.getMAC() != station.getMAC()) {
+				all[n++] = existing;
+			}
+		}
+		all[n++] = station;
+		table = new Table(java.util.Arrays.copyOf(all, n));
+	}
+
+	/**
+	 * Removes the station with the given address
+	 * 
+	 * @param mac short
+	 * @return the removed station, or null if there was none
+	 */
+	public synchronized Station remove(short mac) {
+		Station[] old = table.all;
+		Station[] all = new Station[old.length];
+		Station removed = null;
+		int n = 0;
+		for (Station existing : old) {
+			if (existing.getMAC() == mac) {
+				removed = existing;
+			}
+			else {
+				all[n++] = existing;
+			}
+		}
+		table = new Table(java.util.Arrays.copyOf(all, n));
+		return removed;
+	}
+
+	/**
+	 * gets every hosted station
+	 * 
+	 * @return stations Station[], do not modify
+	 */
+	public Station[] all() {
+		return table.all;
+	}
+
+	/**
+	 * spreads addresses that differ only in their high bits
+	 */
+	private static int hash(short mac) {
+		int h = mac & 0xFFFF;
+		return h ^ (h >>> 7);
+	}
+}
@@ -0,0 +1,177 @@
+package wifi;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket shaping for {@link LinkLayer#send(short, byte[], int)}, one
+ * bucket for everything we send and one per destination. Each bucket is kept
+ * as the time it next becomes empty (the generic cell rate algorithm), so
+ * taking tokens is a single compare and set and senders never lock. Rates and
+ * bursts are read from the command settings on every send, so they can be
+ * changed at any time.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class TrafficShaper {
+
+	// counters
+	private static final int passedFrames = 0;
+	private static final int passedBytes = 1;
+	private static final int delayedFrames = 2;
+	private static final int delayedBytes = 3;
+	private static final int delayNanos = 4;
+	private static final int shapedFrames = 5;
+	private static final int shapedBytes = 6;
+
+	private AtomicIntegerArray cmds;
+	private MacClock clock;
+	private AtomicLong global; // nanoTime the global bucket is empty until
+	private ConcurrentHashMap<Short, AtomicLong> perDest;
+	private AtomicLongArray counts;
+
+	/**
+	 * Creates a shaper. cmds 11 and 12 are the global rate in bytes per second and
+	 * burst in bytes, 13 and 14 the same per destination, a rate of 0 turns that
+	 * bucket off. cmds 15 is 0 to refuse frames over the rate, anything else to
+	 * make the sending thread wait. Nothing may wait on a simulated clock, so
+	 * there frames over the rate are always refused.
+	 *
+	 * @param cmds  AtomicIntegerArray
+	 * @param clock MacClock
+	 */
+	public TrafficShaper(AtomicIntegerArray cmds, MacClock clock) {
+		this.cmds = cmds;
+		this.clock = clock;
+		this.global = new AtomicLong(clock.nanoTime());
+		this.perDest = new ConcurrentHashMap<Short, AtomicLong>();
+		this.counts = new AtomicLongArray(7);
+	}
+
+	/**
+	 * Takes tokens for a frame, waiting for them in blocking mode. Tokens taken
+	 * are never given back, so only call this for a frame that has its place in
+	 * the queue
+	 *
+	 * @param dest  short
+	 * @param bytes int
+	 * @return false if the frame is over the rate and should be refused
+	 */
+	public boolean admit(short dest, int bytes) {
+		int globalRate = cmds.get(11);
+		int destRate = cmds.get(13);
+		if (globalRate <= 0 && destRate <= 0) {
+			return true;
+		}
+		boolean block = cmds.get(15) != 0 && !clock.isSimulated();
+		long now = clock.nanoTime();
+		AtomicLong bucket = destRate > 0 ? bucket(dest) : null;
+
+		long destWait = 0;
+		if (bucket != null) {
+			destWait = take(bucket, bytes, destRate, cmds.get(14), now, block);
+			if (destWait < 0) {
+				return shaped(bytes);
+			}
+		}
+		long globalWait = 0;
+		if (globalRate > 0) {
+			globalWait = take(global, bytes, globalRate, cmds.get(12), now, block);
+			if (globalWait < 0) {
+				// give the destination its tokens back
+				if (bucket != null) {
+					bucket.addAndGet(-cost(bytes, destRate));
+				}
+				return shaped(bytes);
+			}
+		}
+
+		long wait = Math.max(destWait, globalWait);
+		if (wait > 0) {
+			long deadline = now + wait;
+			long left;
+			while ((left = deadline - clock.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+				LockSupport.parkNanos(left);
+			}
+			counts.incrementAndGet(delayedFrames);
+			counts.addAndGet(delayedBytes, bytes);
+			counts.addAndGet(delayNanos, wait);
+		}
+		counts.incrementAndGet(passedFrames);
+		counts.addAndGet(passedBytes, bytes);
+		return true;
+	}
+
+	/**
+	 * Takes tokens from a bucket
+	 *
+	 * @return ns to wait before sending, or -1 if the tokens aren't there and
+	 *         we don't block
+	 */
+	private long take(AtomicLong bucket, int bytes, int rate, int burst, long now, boolean block) {
+		long cost = cost(bytes, rate);
+		// how far ahead of now the bucket may run, a burst of at least one frame
+		long tolerance = cost(Math.max(burst, bytes), rate);
+		while (true) {
+			long emptyUntil = bucket.get();
+			long next = Math.max(emptyUntil, now) + cost;
+			long wait = next - tolerance - now;
+			if (wait > 0 && !block) {
+				return -1;
+			}
+			if (bucket.compareAndSet(emptyUntil, next)) {
+				return Math.max(0, wait);
+			}
+		}
+	}
+
+	/**
+	 * gets the bucket for a destination, creating it the first time
+	 */
+	private AtomicLong bucket(short dest) {
+		AtomicLong bucket = perDest.get(dest);
+		if (bucket == null) {
+			AtomicLong created = new AtomicLong(clock.nanoTime());
+			bucket = perDest.putIfAbsent(dest, created);
+			if (bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+	}
+
+	/**
+	 * ns of tokens a frame costs at a rate
+	 */
+	private static long cost(int bytes, int rate) {
+		return bytes * 1000000000L / rate;
+	}
+
+	/**
+	 * Counts a refused frame
+	 *
+	 * @return false
+	 */
+	private boolean shaped(int bytes) {
+		counts.incrementAndGet(shapedFrames);
+		counts.addAndGet(shapedBytes, bytes);
+		return false;
+	}
+
+	/**
+	 * Summarizes what the shaper did
+	 *
+	 * @return report String
+	 */
+	public String report() {
+		long delayed = counts.get(delayedFrames);
+		return "Traffic shaping: " + counts.get(passedFrames) + " frames (" + counts.get(passedBytes)
+				+ " bytes) passed, " + delayed + " frames (" + counts.get(delayedBytes) + " bytes) delayed"
+				+ (delayed > 0 ? " " + counts.get(delayNanos) / delayed / 1000000 + " ms on average" : "") + ", "
+				+ counts.get(shapedFrames) + " frames (" + counts.get(shapedBytes) + " bytes) refused\n";
+	}
+}
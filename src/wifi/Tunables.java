@@ -0,0 +1,163 @@
+package wifi;
+
+import rf.RF;
+
+/**
+ * MAC parameters that used to be fixed: the outgoing queue limit, the
+ * contention window bounds, the retry limit and the ACK timeout used before a
+ * destination has an RTT estimate. A Tunables is never changed; the link layer
+ * keeps the current one in an AtomicReference and replaces it with a copy when
+ * a command changes a value, so the MAC threads read a consistent set with a
+ * single volatile load.
+ *
+ * @version 23.12.6
+ * @author Matthew Zou, David Lybeck
+ */
+public class Tunables {
+
+	public static final int maxOutgoingLimit = 64;
+	public static final int maxCwMax = 1023; // the largest window 802.11 allows
+
+	private final int outgoingLimit;
+	private final int cwMin;
+	private final int cwMax;
+	private final int retryLimit;
+	private final int initialAckTimeout;
+
+	/**
+	 * Creates the defaults, which match the RF layer and the limits the link layer
+	 * always had
+	 */
+	public Tunables() {
+		this(4, RF.aCWmin, RF.aCWmax, RF.dot11RetryLimit, RF.aSlotTime * 15);
+	}
+
+	private Tunables(int outgoingLimit, int cwMin, int cwMax, int retryLimit, int initialAckTimeout) {
+		this.outgoingLimit = outgoingLimit;
+		this.cwMin = cwMin;
+		this.cwMax = cwMax;
+		this.retryLimit = retryLimit;
+		this.initialAckTimeout = initialAckTimeout;
+	}
+
+	/**
+	 * gets how many frames send() queues before it refuses more
+	 *
+	 * @return outgoingLimit int
+	 */
+	public int getOutgoingLimit() {
+		return outgoingLimit;
+	}
+
+	/**
+	 * gets the contention window after a frame is done
+	 *
+	 * @return cwMin int
+	 */
+	public int getCwMin() {
+		return cwMin;
+	}
+
+	/**
+	 * gets the largest the contention window grows to
+	 *
+	 * @return cwMax int
+	 */
+	public int getCwMax() {
+		return cwMax;
+	}
+
+	/**
+	 * gets how many times a frame is retransmitted before it fails
+	 *
+	 * @return retryLimit int
+	 */
+	public int getRetryLimit() {
+		return retryLimit;
+	}
+
+	/**
+	 * gets the ACK timeout in ms for a destination with no RTT samples
+	 *
+	 * @return initialAckTimeout int
+	 */
+	public int getInitialAckTimeout() {
+		return initialAckTimeout;
+	}
+
+	/**
+	 * Copies with a new outgoing queue limit
+	 *
+	 * @param value int from 1 to maxOutgoingLimit
+	 * @return the copy, or null if the value is out of range
+	 */
+	public Tunables withOutgoingLimit(int value) {
+		if (value < 1 || value > maxOutgoingLimit) {
+			return null;
+		}
+		return new Tunables(value, cwMin, cwMax, retryLimit, initialAckTimeout);
+	}
+
+	/**
+	 * Copies with a new smallest contention window
+	 *
+	 * @param value int from 0 to cwMax
+	 * @return the copy, or null if the value is out of range
+	 */
+	public Tunables withCwMin(int value) {
+		if (value < 0 || value > cwMax) {
+			return null;
+		}
+		return new Tunables(outgoingLimit, value, cwMax, retryLimit, initialAckTimeout);
+	}
+
+	/**
+	 * Copies with a new largest contention window
+	 *
+	 * @param value int from cwMin to maxCwMax
+	 * @return the copy, or null if the value is out of range
+	 */
+	public Tunables withCwMax(int value) {
+		if (value < cwMin || value > maxCwMax) {
+			return null;
+		}
+		return new Tunables(outgoingLimit, cwMin, value, retryLimit, initialAckTimeout);
+	}
+
+	/**
+	 * Copies with a new retry limit
+	 *
+	 * @param value int not negative
+	 * @return the copy, or null if the value is out of range
+	 */
+	public Tunables withRetryLimit(int value) {
+		if (value < 0) {
+			return null;
+		}
+		return new Tunables(outgoingLimit, cwMin, cwMax, value, initialAckTimeout);
+	}
+
+	/**
+	 * Copies with a new initial ACK timeout
+	 *
+	 * @param value int ms, positive
+	 * @return the copy, or null if the value is out of range
+	 */
+	public Tunables withInitialAckTimeout(int value) {
+		if (value <= 0) {
+			return null;
+		}
+		return new Tunables(outgoingLimit, cwMin, cwMax, retryLimit, value);
+	}
+
+	/**
+	 * Lists the values
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return "Outgoing limit " + outgoingLimit + " frames, contention window " + cwMin + " to " + cwMax
+				+ " slots, retry limit " + retryLimit + ", initial ACK timeout " + initialAckTimeout + " ms\n";
+	}
+}
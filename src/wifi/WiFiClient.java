@@ -11,18 +11,23 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
 
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 
 
@@ -68,10 +73,16 @@ public class WiFiClient implements ActionListener, Runnable
 {
 	protected JScrollPane textPane;     // Holds the message text display
 	protected JTextArea inputBox;       // The message text display itself
-	// Text is collected in a StringBuilder as well as the JTextArea.  This allows us to
-	// continue buffering text in the StringBuilder even when the window is paused.
-	protected JTextArea display;        // The output text display
-	protected StringBuffer outputText = new StringBuffer(); // Holds display text
+	// Text from any thread is collected in pendingText, and a Swing timer moves it into
+	// the display's model on the event-dispatching thread a bounded number of times per
+	// second.  While paused, lines are held in heldLines instead so we can continue
+	// buffering text.  Both the model and heldLines keep at most MAX_LINES lines.
+	protected JList<String> display;    // The output text display
+	protected LogListModel outputText;  // Lines shown in the display
+	protected StringBuilder pendingText = new StringBuilder(); // Text not yet displayed
+	protected ArrayDeque<String> heldLines = new ArrayDeque<String>(); // Text held while paused
+	protected int heldCount = 0;        // Number of lines in heldLines
+	protected Timer repaintTimer;       // Moves pendingText into the display
 	protected JFrame frame;             // The frame that holds the display and key panels
 	protected JButton[] ctrlButtons;    // Has to be field so listener can access them
 	protected JButton[] sendButtons;    // Has to be field so listener can access them
@@ -84,6 +95,8 @@ public class WiFiClient implements ActionListener, Runnable
 
 	protected static int NUM_CTRL_BUTTONS = 4;
 	protected static int NUM_SEND_BUTTONS = 10;
+	protected static int MAX_LINES = 10000;  // Lines retained by the output display
+	protected static int MAX_FPS = 30;       // Most display updates per second
 
 	protected static final int COMMAND = 0;
 	protected static final int CLEAR = 1;
@@ -155,12 +168,16 @@ public class WiFiClient implements ActionListener, Runnable
 		frame.add(sendingPanel, BorderLayout.NORTH);
 
 		// Text is displayed in a scrolling pane in the CENTER of the border layout
-		display = new JTextArea();
-		display.setEditable(false);
-		display.setLineWrap(true);
-		display.setWrapStyleWord(true);
+		// A JList with fixed cell sizes only renders the visible lines, however many
+		// are retained.  The list tracks the viewport's width, so long lines are clipped.
+		outputText = new LogListModel(MAX_LINES);
+		display = new JList<String>(outputText) {
+			public boolean getScrollableTracksViewportWidth() { return true; }
+		};
 		display.setFont(new Font("Courier", Font.PLAIN, 14));
-		textPane = new JScrollPane(display); // Wrap TextArea in a ScrollPane
+		display.setFixedCellHeight(display.getFontMetrics(display.getFont()).getHeight());
+		display.setFixedCellWidth(100);
+		textPane = new JScrollPane(display); // Wrap the list in a ScrollPane
 
 		frame.add(textPane, BorderLayout.CENTER);
 
@@ -185,6 +202,12 @@ public class WiFiClient implements ActionListener, Runnable
 		frame.add(controls, BorderLayout.SOUTH);
 		frame.setVisible(true);
 
+		// Coalesce display updates into at most MAX_FPS repaints per second
+		repaintTimer = new Timer(1000 / MAX_FPS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) { flushText(); }
+		});
+		repaintTimer.start();
+
 		// Now that frame's set up, go ahead and initialize link layer
 		theLinkLayer.initializeLinkLayer(MACaddr);
 	}
@@ -259,8 +282,12 @@ public class WiFiClient implements ActionListener, Runnable
 		}
 		// Clear deletes the text from the buffer and resets the display
 		else if (e.getSource() == ctrlButtons[CLEAR]) { // CLEAR
-			outputText.delete(0, outputText.length());   
-			display.setText("");
+			synchronized (pendingText) {
+				pendingText.setLength(0);
+			}
+			heldLines.clear();
+			heldCount = 0;
+			outputText.clear();
 			textPane.getVerticalScrollBar().setValue(Integer.MAX_VALUE);
 		}
 		// Pause negates the paused flag, which controls whether text added
@@ -273,8 +300,13 @@ public class WiFiClient implements ActionListener, Runnable
 			}
 			else {
 				ctrlButtons[PAUSE].setText("Pause");
-				display.setText(outputText.toString());
-				textPane.getVerticalScrollBar().setValue(Integer.MAX_VALUE);
+				StringBuilder held = new StringBuilder();
+				for (String line : heldLines)
+					held.append(line);
+				heldLines.clear();
+				heldCount = 0;
+				outputText.append(held.toString());
+				display.ensureIndexIsVisible(outputText.getSize() - 1);
 			}
 		}
 		else if (e.getSource() == ctrlButtons[SAVE])
@@ -286,31 +318,58 @@ public class WiFiClient implements ActionListener, Runnable
 
 	/**
 	 * Call this to append text to the scrolling output pane.  No newlines are added,
-	 * so be sure to include a "\n" where desired.  Text is collected in a StringBuffer
-	 * (outputText) as well as the JTextArea (display).  This allows us to continue 
-	 * buffering text even when the window output is paused.
+	 * so be sure to include a "\n" where desired.  This may be called from any thread:
+	 * the text is only collected here, and flushText() moves it into the display on
+	 * the event-dispatching thread.
 	 * 
 	 * @param msg  Text to add to the scrolling pane
 	 */
-	public synchronized void addText(String msg) {
-
-		outputText.append(msg);   
-		// Setting the scroll bar's position sometimes causes a mysterious exception
-		// to be thrown.  If it happens, pause while the output collects in outputText.
-		// When the user resumes, all of the outputText will be dumped into the display
-		// pane again.
-		try {
-			if (!paused) { 
-				display.append(msg); 
-				// textPane.getVerticalScrollBar().setValue(Integer.MAX_VALUE);
-			}
-		} catch (RuntimeException e) {
-			System.err.println("Exception in addText() -- pausing output");
-			paused = true;
-			ctrlButtons[PAUSE].setText("Resume");
+	public void addText(String msg) {
+		synchronized (pendingText) {
+			pendingText.append(msg);
 		}
 	}   
 
+	/**
+	 * Moves the text collected by addText() into the display.  Runs on the
+	 * event-dispatching thread each time the repaint timer fires, so a burst of
+	 * output costs one model update rather than one per line.  While paused the
+	 * text is held back instead, keeping only the newest MAX_LINES lines.
+	 */
+	private void flushText() {
+		String msg;
+		synchronized (pendingText) {
+			if (pendingText.length() == 0)
+				return;
+			msg = pendingText.toString();
+			pendingText.setLength(0);
+		}
+		if (paused) {
+			heldLines.add(msg);
+			heldCount += countLines(msg);
+			while (heldCount > MAX_LINES && heldLines.size() > 1)
+				heldCount -= countLines(heldLines.removeFirst());
+			return;
+		}
+		// Only follow new output if the user hasn't scrolled back to look at something
+		javax.swing.JScrollBar bar = textPane.getVerticalScrollBar();
+		boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum();
+		outputText.append(msg);
+		if (atBottom)
+			display.ensureIndexIsVisible(outputText.getSize() - 1);
+	}
+
+	/**
+	 * Counts the newlines in a chunk of output.
+	 */
+	private static int countLines(String msg) {
+		int lines = 0;
+		for (int i=0; i<msg.length(); i++)
+			if (msg.charAt(i) == '\n')
+				lines++;
+		return lines;
+	}
+
 	/**
 	 * Prompts user to select an output file, then writes all text from the
 	 * scrolling pane to the file.
@@ -324,10 +383,10 @@ public class WiFiClient implements ActionListener, Runnable
 			PrintWriter writer;
 			try {
 				writer = new PrintWriter(new FileWriter(outputFile));
-				writer.println(display.getText());
+				writer.print(outputText.getText());
 				writer.close();
 			} catch (IOException e) {
-				outputText.append("Error writing to file!!");
+				addText("Error writing to file!!\n");
 			}
 		} 
 	}
@@ -356,9 +415,22 @@ public class WiFiClient implements ActionListener, Runnable
 		public StreamWatcher(WiFiClient display) { this.display = display; }
 
 		/**
-		 * Block and wait for incoming transmissions.  Repeat.
+		 * Block and wait for incoming transmissions.  Repeat.  The Java layer can
+		 * push transmissions to us instead, in which case we just register for them.
 		 */
 		public void run() {
+			if (theLinkLayer instanceof JavaGUIAdapter) {
+				((JavaGUIAdapter)theLinkLayer).setIncomingDataListener(
+						new JavaGUIAdapter.IncomingDataListener() {
+							public void incomingData(List<byte[]> messages) {
+								StringBuilder text = new StringBuilder();
+								for (byte[] bytes : messages)
+									text.append(format(bytes));
+								display.addText(text.toString());
+							}
+						}, Executors.newSingleThreadExecutor());
+				return;
+			}
 			for(;;) {
 				try {
 					Thread.sleep(20);
@@ -367,15 +439,22 @@ public class WiFiClient implements ActionListener, Runnable
 				}   
 				byte[] bytes = theLinkLayer.watchForIncomingData();
 				if (bytes != null && bytes.length >= 2) {
-					int tmp = ((int)bytes[0]) & 0xFF;
-					tmp = (tmp << 8) | (((int)bytes[1]) & 0xFF);
-					short srcAddr = (short)tmp;
-					String payload = new String(bytes, 2, bytes.length-2);
-					display.addText("From "+srcAddr+": \""+payload+"\"\n");
+					display.addText(format(bytes));
 				}
 			}
 		}
 
+		/**
+		 * Turns the source address and data from the link layer into a line of text.
+		 */
+		private String format(byte[] bytes) {
+			int tmp = ((int)bytes[0]) & 0xFF;
+			tmp = (tmp << 8) | (((int)bytes[1]) & 0xFF);
+			short srcAddr = (short)tmp;
+			String payload = new String(bytes, 2, bytes.length-2);
+			return "From "+srcAddr+": \""+payload+"\"\n";
+		}
+
 	}
 
 
@@ -424,11 +503,17 @@ public class WiFiClient implements ActionListener, Runnable
 		// text display window.
 
 		for(;;) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-				// Do nothing if awakened early
-			}   
+			if (linkLayer instanceof JavaGUIAdapter) {
+				// The Java layer tells us when output is ready, so just wait for it
+				((JavaGUIAdapter)linkLayer).awaitStreamOutput(1000);
+			}
+			else {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// Do nothing if awakened early
+				}   
+			}
 			byte[] bytes = linkLayer.pollForStreamOutput();
 			if (bytes != null) {
 				String output = new String(bytes, 0, bytes.length);